@@ -0,0 +1,200 @@
+package com.mchekin.tipcurrent.broadcast;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel that drives the heartbeats of STOMP sessions on one thread. Each session
+ * sits in the slot of the tick when it next needs attention, either because a heartbeat is due or
+ * because its client may have gone silent, so a tick only visits the sessions due then instead of
+ * scanning all of them. Sessions due more than one revolution ahead stay in their slot until their
+ * round comes.
+ * <p>
+ * Reads are recorded from any thread; the slots are only touched by the wheel thread. Sessions
+ * that are removed are dropped the next time their slot comes round.
+ */
+@Slf4j
+public class HeartbeatWheel {
+
+    /**
+     * What the wheel asks of the broker. Called on the wheel thread, so must not block.
+     */
+    public interface Listener {
+
+        void heartbeatDue(String sessionId);
+
+        void expired(String sessionId);
+    }
+
+    private final long tickMs;
+    private final ArrayDeque<Session>[] slots;
+    private final Listener listener;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Session> added = new ConcurrentLinkedQueue<>();
+    private final Timer lag;
+    private final long origin = System.nanoTime();
+
+    private ScheduledThreadPoolExecutor ticker;
+    // Tick n is due n * tickMs after the origin. Only read and written on the wheel thread once started
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public HeartbeatWheel(long tickMs, int slotCount, Listener listener, MeterRegistry meterRegistry) {
+        this.tickMs = tickMs;
+        this.slots = new ArrayDeque[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.listener = listener;
+        this.lag = meterRegistry.timer("tipcurrent.scheduler.lag", "scheduler", "heartbeat");
+        meterRegistry.gauge("tipcurrent.broadcast.heartbeat.sessions", sessions, ConcurrentHashMap::size);
+    }
+
+    public void start() {
+        tick = now() / tickMs;
+        ticker = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::advance, 0, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts tracking a session.
+     *
+     * @param writeIntervalMs how often the session must receive a heartbeat; {@code 0} for never
+     * @param readTimeoutMs   how long the client may stay silent before it is given up; {@code 0} for ever
+     */
+    public void register(String sessionId, long writeIntervalMs, long readTimeoutMs) {
+        long now = now();
+        Session session = new Session(sessionId, writeIntervalMs, readTimeoutMs, now);
+        Session previous = sessions.put(sessionId, session);
+        if (previous != null) {
+            previous.removed = true;
+        }
+        added.add(session);
+    }
+
+    /**
+     * Records that the client of the session has sent something.
+     */
+    public void touch(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session != null) {
+            session.lastRead = now();
+        }
+    }
+
+    public void remove(String sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (session != null) {
+            session.removed = true;
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private void advance() {
+        long now = now();
+        lag.record(Math.max(0, now - tick * tickMs), TimeUnit.MILLISECONDS);
+        for (Session session = added.poll(); session != null; session = added.poll()) {
+            if (!session.removed) {
+                schedule(session);
+            }
+        }
+        ArrayDeque<Session> slot = slots[slotOf(tick)];
+        for (int remaining = slot.size(); remaining > 0; remaining--) {
+            Session session = slot.poll();
+            if (session.removed) {
+                continue;
+            }
+            if (session.dueTick > tick) {
+                // Due in a later revolution
+                slot.add(session);
+                continue;
+            }
+            try {
+                visit(session, now);
+            } catch (RuntimeException e) {
+                // Escaping, it would cancel the fixed-rate task and with it every heartbeat
+                log.warn("Heartbeat of session {} failed", session.id, e);
+                schedule(session);
+            }
+        }
+        tick++;
+    }
+
+    private void visit(Session session, long now) {
+        if (session.readTimeoutMs > 0 && now - session.lastRead > session.readTimeoutMs) {
+            session.removed = true;
+            sessions.remove(session.id, session);
+            listener.expired(session.id);
+            return;
+        }
+        if (session.writeIntervalMs > 0 && now >= session.nextWrite) {
+            listener.heartbeatDue(session.id);
+            session.nextWrite = now + session.writeIntervalMs;
+        }
+        schedule(session);
+    }
+
+    private void schedule(Session session) {
+        long due = Long.MAX_VALUE;
+        if (session.writeIntervalMs > 0) {
+            due = session.nextWrite;
+        }
+        if (session.readTimeoutMs > 0) {
+            due = Math.min(due, session.lastRead + session.readTimeoutMs + 1);
+        }
+        if (due == Long.MAX_VALUE) {
+            return;
+        }
+        // Rounded up, so the session is never visited before it is due
+        session.dueTick = Math.max(tick + 1, (due + tickMs - 1) / tickMs);
+        slots[slotOf(session.dueTick)].add(session);
+    }
+
+    private int slotOf(long tick) {
+        return (int) (tick % slots.length);
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+    }
+
+    private static final class Session {
+
+        private final String id;
+        private final long writeIntervalMs;
+        private final long readTimeoutMs;
+        private volatile long lastRead;
+        private volatile boolean removed;
+        // Only read and written on the wheel thread
+        private long nextWrite;
+        private long dueTick;
+
+        private Session(String id, long writeIntervalMs, long readTimeoutMs, long now) {
+            this.id = id;
+            this.writeIntervalMs = writeIntervalMs;
+            this.readTimeoutMs = readTimeoutMs;
+            this.lastRead = now;
+            this.nextWrite = now + writeIntervalMs;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.mchekin.tipcurrent.broadcast;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Who is watching each room on this node, read from the subscriptions the {@link RoomBroker} keeps
+ * up to date as sessions subscribe, unsubscribe and disconnect. Lets a broadcast skip rooms nobody
+ * watches, which are most of them, before it builds a message at all.
+ */
+public class RoomAudience {
+
+    private final SubscriptionRegistry registry;
+    private final RoomReplayLog replayLog;
+    private final long skipUnwatchedAfterMs;
+    private final Counter skipped;
+
+    /**
+     * @param stripeCount          subscriber stripes per room, one per fan-out worker
+     * @param skipUnwatchedAfterMs how long after its last subscriber left a room's messages are still
+     *                             logged for clients that come back; after that they are skipped
+     */
+    public RoomAudience(int stripeCount, RoomReplayLog replayLog, MeterRegistry meterRegistry,
+                        long skipUnwatchedAfterMs) {
+        this.registry = new SubscriptionRegistry(stripeCount);
+        this.replayLog = replayLog;
+        this.skipUnwatchedAfterMs = skipUnwatchedAfterMs;
+        this.skipped = meterRegistry.counter("tipcurrent.broadcast.skipped");
+    }
+
+    /**
+     * Returns the number of subscriptions to the room's topic on this node.
+     */
+    public int viewers(String roomId) {
+        SubscriptionRegistry.Destination subscribers = registry.get(RoomBroker.ROOM_PREFIX + roomId);
+        return subscribers == null ? 0 : subscribers.size();
+    }
+
+    /**
+     * Returns whether any session on this node has subscribed to the destination.
+     */
+    public boolean hasSubscribers(String destination) {
+        return registry.get(destination) != null;
+    }
+
+    /**
+     * Returns whether a message to the room's topic can be skipped because no session on this node
+     * has subscribed to it for a while. The room's replay log is dropped first, as it will be
+     * missing the message; clients resuming from before it are replayed from the database instead.
+     */
+    public boolean canSkip(String roomId) {
+        String destination = RoomBroker.ROOM_PREFIX + roomId;
+        if (registry.get(destination) != null || !replayLog.unwatchedFor(destination, skipUnwatchedAfterMs)) {
+            return false;
+        }
+        replayLog.forget(destination);
+        // A subscription made since may have been replayed from the dropped log; it needs the message live
+        if (registry.get(destination) != null) {
+            return false;
+        }
+        skipped.increment();
+        return true;
+    }
+
+    SubscriptionRegistry registry() {
+        return registry;
+    }
+}
@@ -0,0 +1,85 @@
+package com.mchekin.tipcurrent.broadcast;
+
+import com.mchekin.tipcurrent.dto.RoomTipBatch;
+import com.mchekin.tipcurrent.dto.RoomTipSummary;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the room-level frames of the broker: a {@link RoomTipBatch} folding the tip messages a
+ * room received during one coalescing window, and a {@link RoomTipSummary} for sessions that only
+ * receive summaries. Batch messages among the tips contribute their tips in order.
+ */
+class RoomBatchEncoder {
+
+    private final JsonMapper jsonMapper;
+
+    RoomBatchEncoder(JsonMapper jsonMapper) {
+        this.jsonMapper = jsonMapper;
+    }
+
+    /**
+     * Returns one message holding every tip of {@code messages}, or {@code null} when one of them
+     * is not a tip or a tip batch and the messages have to be sent as they are.
+     */
+    Message<byte[]> merge(String destination, String roomId, List<Message<?>> messages) {
+        List<TipResponse> tips = new ArrayList<>();
+        for (Message<?> message : messages) {
+            List<TipResponse> messageTips = tipsOf(message);
+            if (messageTips == null) {
+                return null;
+            }
+            tips.addAll(messageTips);
+        }
+        return message(destination, jsonMapper.writeValueAsBytes(RoomTipBatch.of(roomId, tips)));
+    }
+
+    Message<byte[]> summary(String destination, String roomId, int tipCount, BigDecimal totalAmount) {
+        return message(destination, jsonMapper.writeValueAsBytes(RoomTipSummary.builder()
+                .roomId(roomId)
+                .tipCount(tipCount)
+                .totalAmount(totalAmount)
+                .build()));
+    }
+
+    /**
+     * Returns the tips a tip or tip batch message carries, or {@code null} when it carries neither.
+     */
+    List<TipResponse> tipsOf(Message<?> message) {
+        if (!(message.getPayload() instanceof byte[] payload)) {
+            return null;
+        }
+        try {
+            JsonNode node = jsonMapper.readTree(payload);
+            if (node.has("tips")) {
+                List<TipResponse> tips = new ArrayList<>();
+                for (JsonNode tip : node.get("tips")) {
+                    tips.add(jsonMapper.treeToValue(tip, TipResponse.class));
+                }
+                return tips;
+            }
+            return node.has("amount") ? List.of(jsonMapper.treeToValue(node, TipResponse.class)) : null;
+        } catch (JacksonException e) {
+            return null;
+        }
+    }
+
+    private static Message<byte[]> message(String destination, byte[] payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+}
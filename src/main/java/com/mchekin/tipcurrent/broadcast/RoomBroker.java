@@ -0,0 +1,512 @@
+package com.mchekin.tipcurrent.broadcast;
+
+import com.mchekin.tipcurrent.broadcast.SubscriptionRegistry.Destination;
+import com.mchekin.tipcurrent.broadcast.SubscriptionRegistry.Subscriber;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory STOMP broker for {@code /topic} destinations, built for rooms with many viewers.
+ * Messages are fanned out by a fixed set of shard threads, each room pinned to one shard by the
+ * hash of its id, so a room's messages keep their order while different rooms proceed in
+ * parallel. A room with more subscribers than the parallel threshold is split by subscriber
+ * stripe across a pool of fan-out workers, which hand the copies to the outbound channel
+ * concurrently. Every subscriber's copy shares the published payload.
+ * <p>
+ * With a coalescing window, a tip to a room's topic is sent at once and opens the window; tips
+ * arriving while it is open are held back and sent together as one {@code RoomTipBatch} frame
+ * when it closes. A busy room thus gets at most one frame per window after the first, while a
+ * quiet room sees no delay at all.
+ * <p>
+ * Sessions that {@link SlowConsumers} has switched to summaries get no tips on room topics.
+ * Instead, every summary interval they get the count and total of the tips the room received.
+ * <p>
+ * Every message to a room topic carries the room's sequence number in a {@code seq} header and is
+ * kept in the {@link RoomReplayLog}. A client that subscribes with a {@code last-seq} header gets
+ * the messages after it replayed before any new ones, or, when the log no longer reaches back that
+ * far, the tips since then from the database, with the room's new messages held back until then.
+ * <p>
+ * Heartbeats are negotiated as in STOMP: a session is sent one whenever its client asks, and given
+ * up once its client, having promised them, has sent nothing for three intervals. A
+ * {@link HeartbeatWheel} keeps the schedule, so heartbeats do not depend on any shared scheduler.
+ */
+@Slf4j
+public class RoomBroker extends AbstractBrokerMessageHandler {
+
+    static final String ROOM_PREFIX = "/topic/rooms/";
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+    private static final long[] NO_HEARTBEAT = {0, 0};
+    private static final int HEARTBEAT_TOLERANCE = 3;
+    private static final int HEARTBEAT_WHEEL_SLOTS = 512;
+
+    private final SubscriptionRegistry registry;
+    private final RoomBatchEncoder batchEncoder;
+    private final Settings settings;
+    private final Timer fanOutTimer;
+    private final Counter coalescedTips;
+    // Tips held back per room topic while its window is open; each entry is only touched by its room's shard
+    private final Map<String, List<Message<?>>> openWindows = new ConcurrentHashMap<>();
+    // Tips per room topic awaiting the next summary; also only touched by the room's shard
+    private final Map<String, RoomSummary> pendingSummaries = new ConcurrentHashMap<>();
+    private final SlowConsumers slowConsumers;
+    private final RoomReplayLog replayLog;
+    // Messages held back from subscribers whose replay from the database is still being read. Entries are
+    // added and removed on the room's shard; the room's fan-outs, which fill them, never overlap.
+    private final Map<Subscriber, List<Message<?>>> awaitingHistory = new ConcurrentHashMap<>();
+    private final Set<String> connectedSessions = ConcurrentHashMap.newKeySet();
+    private final HeartbeatWheel heartbeats;
+
+    private ScheduledThreadPoolExecutor[] shards;
+    private ExecutorService workers;
+    private ExecutorService replays;
+
+    /**
+     * @param shards            threads that fan out messages, each room pinned to one
+     * @param workers           threads that share the fan-out of large rooms, and subscriber stripes per room
+     * @param parallelThreshold subscriber count from which a room is fanned out across the workers
+     * @param coalescingWindowMs how long tips to a room are held back after one is sent; {@code 0} sends each at once
+     * @param summaryIntervalMs how often sessions that fell behind get a summary of each room
+     * @param heartbeatIntervalMs shortest heartbeat interval offered to clients; {@code 0} disables heartbeats
+     * @param heartbeatTickMs   resolution of the heartbeat schedule
+     */
+    public record Settings(int shards, int workers, int parallelThreshold, long coalescingWindowMs,
+                           long summaryIntervalMs, long heartbeatIntervalMs, long heartbeatTickMs) {
+    }
+
+    public RoomBroker(SubscribableChannel clientInboundChannel, MessageChannel clientOutboundChannel,
+                      SubscribableChannel brokerChannel, MeterRegistry meterRegistry, JsonMapper jsonMapper,
+                      SlowConsumers slowConsumers, RoomReplayLog replayLog, RoomAudience audience,
+                      Settings settings) {
+        super(clientInboundChannel, clientOutboundChannel, brokerChannel, List.of("/topic"));
+        this.settings = settings;
+        this.slowConsumers = slowConsumers;
+        this.replayLog = replayLog;
+        this.registry = audience.registry();
+        this.batchEncoder = new RoomBatchEncoder(jsonMapper);
+        this.fanOutTimer = meterRegistry.timer("tipcurrent.broadcast.fanout");
+        this.coalescedTips = meterRegistry.counter("tipcurrent.broadcast.coalesced");
+        this.heartbeats = new HeartbeatWheel(settings.heartbeatTickMs(), HEARTBEAT_WHEEL_SLOTS, new HeartbeatWheel.Listener() {
+            @Override
+            public void heartbeatDue(String sessionId) {
+                sendHeartbeat(sessionId);
+            }
+
+            @Override
+            public void expired(String sessionId) {
+                expire(sessionId);
+            }
+        }, meterRegistry);
+        Gauge.builder("tipcurrent.broadcast.destinations", registry, SubscriptionRegistry::destinationCount)
+                .register(meterRegistry);
+        Gauge.builder("tipcurrent.broadcast.sessions", registry, SubscriptionRegistry::sessionCount)
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void startInternal() {
+        shards = new ScheduledThreadPoolExecutor[settings.shards()];
+        for (int i = 0; i < shards.length; i++) {
+            String name = "room-broadcast-" + i;
+            shards[i] = new ScheduledThreadPoolExecutor(1, runnable -> daemon(runnable, name));
+            // Held-back tips are not worth flushing to sessions that are about to close
+            shards[i].setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        }
+        AtomicInteger workerIds = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(settings.workers(),
+                runnable -> daemon(runnable, "room-fanout-" + workerIds.getAndIncrement()));
+        replays = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "room-replay"));
+        if (settings.heartbeatIntervalMs() > 0) {
+            heartbeats.start();
+        }
+        publishBrokerAvailableEvent();
+        log.info("Room broker started: shards={}, workers={}, parallelThreshold={}, coalescingWindowMs={}, heartbeatIntervalMs={}",
+                settings.shards(), settings.workers(), settings.parallelThreshold(), settings.coalescingWindowMs(),
+                settings.heartbeatIntervalMs());
+    }
+
+    @Override
+    protected void stopInternal() {
+        publishBrokerUnavailableEvent();
+        heartbeats.stop();
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        workers.shutdown();
+        replays.shutdown();
+        try {
+            for (ExecutorService shard : shards) {
+                shard.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected void handleMessageInternal(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+
+        if (sessionId != null) {
+            // Any frame from the client counts as a sign of life, whatever its destination
+            heartbeats.touch(sessionId);
+        }
+        if (messageType == null || (destination != null && !checkDestinationPrefix(destination))) {
+            return;
+        }
+
+        switch (messageType) {
+            case MESSAGE -> publish(destination, message);
+            case SUBSCRIBE -> {
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+                if (sessionId != null && subscriptionId != null && destination != null) {
+                    subscribe(sessionId, subscriptionId, destination, lastSeq(headers));
+                }
+            }
+            case UNSUBSCRIBE -> {
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+                if (sessionId != null && subscriptionId != null) {
+                    registry.unsubscribe(sessionId, subscriptionId);
+                }
+            }
+            case CONNECT -> {
+                if (sessionId != null) {
+                    connectedSessions.add(sessionId);
+                    long[] heartbeat = negotiateHeartbeat(sessionId, SimpMessageHeaderAccessor.getHeartbeat(headers));
+                    acknowledgeConnect(sessionId, SimpMessageHeaderAccessor.getUser(headers), message, heartbeat);
+                }
+            }
+            case DISCONNECT -> {
+                if (sessionId != null) {
+                    connectedSessions.remove(sessionId);
+                    heartbeats.remove(sessionId);
+                    registry.unsubscribeAll(sessionId);
+                    acknowledgeDisconnect(sessionId, SimpMessageHeaderAccessor.getUser(headers), message);
+                }
+            }
+            default -> {
+                // Heartbeats and other frames need no reply from this broker
+            }
+        }
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination, Long lastSeq) {
+        if (lastSeq == null || !isRoomTopic(destination)) {
+            registry.subscribe(sessionId, subscriptionId, destination);
+            return;
+        }
+        // On the room's shard, nothing can be broadcast between the subscription and the start of its replay
+        shardFor(destination).execute(() -> {
+            registry.subscribe(sessionId, subscriptionId, destination);
+            if (!connectedSessions.contains(sessionId)) {
+                // Disconnected while this was queued; its subscriptions were already cleared
+                registry.unsubscribe(sessionId, subscriptionId);
+                return;
+            }
+            replay(new Subscriber(sessionId, subscriptionId), destination, lastSeq);
+        });
+    }
+
+    private void replay(Subscriber subscriber, String destination, long lastSeq) {
+        List<Message<?>> missed = replayLog.since(destination, lastSeq);
+        if (missed != null) {
+            missed.forEach(message -> deliver(subscriber, destination, message));
+            return;
+        }
+        CompletableFuture<Message<byte[]>> history =
+                replayLog.fromHistory(destination, destination.substring(ROOM_PREFIX.length()), lastSeq, replays);
+        // The history is read on another thread while the room goes on, so the room's messages wait for it.
+        // The flush is queued on this shard and cannot run before the subscriber is registered as waiting.
+        awaitingHistory.put(subscriber, new ArrayList<>());
+        history.whenComplete((message, error) -> shardFor(destination).execute(() -> {
+            List<Message<?>> heldBack = awaitingHistory.remove(subscriber);
+            if (error != null) {
+                log.warn("Failed to replay {} since seq {} from the database", destination, lastSeq, error);
+            } else if (message != null) {
+                deliver(subscriber, destination, message);
+            }
+            if (heldBack != null) {
+                heldBack.forEach(held -> deliver(subscriber, destination, held));
+            }
+        }));
+    }
+
+    private void publish(String destination, Message<?> message) {
+        if (destination == null) {
+            return;
+        }
+        ScheduledThreadPoolExecutor shard = shardFor(destination);
+        if (!isRoomTopic(destination)) {
+            shard.execute(() -> fanOut(destination, message));
+        } else if (settings.coalescingWindowMs() > 0) {
+            shard.execute(() -> coalesce(shard, destination, message));
+        } else {
+            shard.execute(() -> broadcastToRoom(destination, message));
+        }
+    }
+
+    private void broadcastToRoom(String destination, Message<?> message) {
+        fanOut(destination, replayLog.append(destination, message, registry.get(destination) != null));
+    }
+
+    private void coalesce(ScheduledThreadPoolExecutor shard, String destination, Message<?> message) {
+        List<Message<?>> heldBack = openWindows.get(destination);
+        if (heldBack != null) {
+            heldBack.add(message);
+            return;
+        }
+        if (registry.get(destination) == null) {
+            // Nobody to coalesce for, but a reconnecting client may still ask for it
+            replayLog.append(destination, message, false);
+            return;
+        }
+        broadcastToRoom(destination, message);
+        openWindows.put(destination, new ArrayList<>());
+        shard.schedule(() -> closeWindow(shard, destination), settings.coalescingWindowMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void closeWindow(ScheduledThreadPoolExecutor shard, String destination) {
+        List<Message<?>> heldBack = openWindows.remove(destination);
+        if (heldBack == null || heldBack.isEmpty()) {
+            return;
+        }
+        if (heldBack.size() == 1) {
+            broadcastToRoom(destination, heldBack.getFirst());
+        } else {
+            Message<byte[]> batch = batchEncoder.merge(destination, destination.substring(ROOM_PREFIX.length()), heldBack);
+            if (batch != null) {
+                broadcastToRoom(destination, batch);
+                coalescedTips.increment(heldBack.size());
+            } else {
+                heldBack.forEach(message -> broadcastToRoom(destination, message));
+            }
+        }
+        // The room is still busy, so the tips that follow are held back for another window
+        openWindows.put(destination, new ArrayList<>());
+        shard.schedule(() -> closeWindow(shard, destination), settings.coalescingWindowMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void fanOut(String destination, Message<?> message) {
+        Destination subscribers = registry.get(destination);
+        if (subscribers == null) {
+            return;
+        }
+
+        boolean summarizing = slowConsumers.anySummaryOnly() && isRoomTopic(destination);
+        if (summarizing) {
+            summarize(destination, message);
+        }
+
+        long start = System.nanoTime();
+        if (subscribers.size() < settings.parallelThreshold()) {
+            subscribers.forEach(subscriber -> send(subscriber, destination, message, summarizing));
+        } else {
+            // Waiting here keeps the room's next message behind this one
+            CompletableFuture<?>[] stripes = new CompletableFuture<?>[subscribers.stripeCount()];
+            for (int i = 0; i < stripes.length; i++) {
+                Collection<Subscriber> stripe = subscribers.stripe(i);
+                stripes[i] = CompletableFuture.runAsync(
+                        () -> stripe.forEach(subscriber -> send(subscriber, destination, message, summarizing)), workers);
+            }
+            CompletableFuture.allOf(stripes).join();
+        }
+        fanOutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void summarize(String destination, Message<?> message) {
+        List<TipResponse> tips = batchEncoder.tipsOf(message);
+        if (tips == null) {
+            return;
+        }
+        RoomSummary summary = pendingSummaries.get(destination);
+        if (summary == null) {
+            summary = new RoomSummary();
+            pendingSummaries.put(destination, summary);
+            shardFor(destination).schedule(() -> sendSummary(destination), settings.summaryIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+        summary.add(tips);
+    }
+
+    private void sendSummary(String destination) {
+        RoomSummary summary = pendingSummaries.remove(destination);
+        Destination subscribers = registry.get(destination);
+        if (summary == null || subscribers == null) {
+            return;
+        }
+        // Carries the room's sequence number, so resuming from it skips the tips it summarized
+        Message<?> message = RoomReplayLog.withNativeHeader(
+                batchEncoder.summary(destination, destination.substring(ROOM_PREFIX.length()), summary.tipCount, summary.totalAmount),
+                RoomReplayLog.SEQ_HEADER, String.valueOf(replayLog.lastSeq(destination)));
+        subscribers.forEach(subscriber -> {
+            if (slowConsumers.isSummaryOnly(subscriber.sessionId())) {
+                deliver(subscriber, destination, message);
+            }
+        });
+    }
+
+    private void send(Subscriber subscriber, String destination, Message<?> message, boolean summarizing) {
+        if (summarizing && slowConsumers.isSummaryOnly(subscriber.sessionId())) {
+            return;
+        }
+        deliver(subscriber, destination, message);
+    }
+
+    private void deliver(Subscriber subscriber, String destination, Message<?> message) {
+        List<Message<?>> heldBack = awaitingHistory.get(subscriber);
+        if (heldBack != null) {
+            heldBack.add(message);
+            return;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(subscriber.sessionId());
+        accessor.setSubscriptionId(subscriber.subscriptionId());
+        accessor.copyHeadersIfAbsent(message.getHeaders());
+        accessor.setDestination(destination);
+        accessor.setLeaveMutable(true);
+        try {
+            getClientOutboundChannel().send(MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to send to session {} on {}", subscriber.sessionId(), destination, e);
+        }
+    }
+
+    /**
+     * Registers the session's heartbeats as agreed with its client: each side sends at the larger of
+     * the interval one offers and the other asks for, and not at all if either is zero.
+     *
+     * @return the heartbeat the server offers, to go into the CONNECTED frame
+     */
+    private long[] negotiateHeartbeat(String sessionId, long[] clientHeartbeat) {
+        long interval = settings.heartbeatIntervalMs();
+        if (interval <= 0) {
+            return NO_HEARTBEAT;
+        }
+        long[] client = clientHeartbeat != null ? clientHeartbeat : NO_HEARTBEAT;
+        long writeIntervalMs = client[1] > 0 ? Math.max(client[1], interval) : 0;
+        long readTimeoutMs = client[0] > 0 ? Math.max(client[0], interval) * HEARTBEAT_TOLERANCE : 0;
+        if (writeIntervalMs > 0 || readTimeoutMs > 0) {
+            heartbeats.register(sessionId, writeIntervalMs, readTimeoutMs);
+        }
+        return new long[] {interval, interval};
+    }
+
+    private void sendHeartbeat(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.HEARTBEAT);
+        accessor.setSessionId(sessionId);
+        accessor.setLeaveMutable(true);
+        try {
+            getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD, accessor.getMessageHeaders()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to send heartbeat to session {}", sessionId, e);
+        }
+    }
+
+    private void expire(String sessionId) {
+        log.debug("Closing session {}: no heartbeat from its client", sessionId);
+        connectedSessions.remove(sessionId);
+        registry.unsubscribeAll(sessionId);
+        // Closes the WebSocket session
+        acknowledgeDisconnect(sessionId, null, null);
+    }
+
+    private void acknowledgeConnect(String sessionId, Principal user, Message<?> connect, long[] heartbeat) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+        accessor.setSessionId(sessionId);
+        if (user != null) {
+            accessor.setUser(user);
+        }
+        accessor.setHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER, connect);
+        accessor.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, heartbeat);
+        getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD, accessor.getMessageHeaders()));
+    }
+
+    private void acknowledgeDisconnect(String sessionId, Principal user, Message<?> disconnect) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT_ACK);
+        accessor.setSessionId(sessionId);
+        if (user != null) {
+            accessor.setUser(user);
+        }
+        accessor.setHeader(SimpMessageHeaderAccessor.DISCONNECT_MESSAGE_HEADER, disconnect);
+        getClientOutboundChannel().send(MessageBuilder.createMessage(EMPTY_PAYLOAD, accessor.getMessageHeaders()));
+    }
+
+    private ScheduledThreadPoolExecutor shardFor(String destination) {
+        return shards[Math.floorMod(shardKey(destination).hashCode(), shards.length)];
+    }
+
+    private static Long lastSeq(MessageHeaders headers) {
+        String lastSeq = NativeMessageHeaderAccessor.getFirstNativeHeader(RoomReplayLog.LAST_SEQ_HEADER, headers);
+        if (lastSeq == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(lastSeq);
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed {} header: {}", RoomReplayLog.LAST_SEQ_HEADER, lastSeq);
+            return null;
+        }
+    }
+
+    private static boolean isRoomTopic(String destination) {
+        return destination.startsWith(ROOM_PREFIX) && destination.indexOf('/', ROOM_PREFIX.length()) < 0;
+    }
+
+    // A room's sub-destinations share its shard, so everything about one room stays in order
+    private static String shardKey(String destination) {
+        if (!destination.startsWith(ROOM_PREFIX)) {
+            return destination;
+        }
+        int end = destination.indexOf('/', ROOM_PREFIX.length());
+        return end < 0 ? destination.substring(ROOM_PREFIX.length()) : destination.substring(ROOM_PREFIX.length(), end);
+    }
+
+    private static final class RoomSummary {
+
+        private int tipCount;
+        private BigDecimal totalAmount = BigDecimal.ZERO;
+
+        private void add(List<TipResponse> tips) {
+            for (TipResponse tip : tips) {
+                tipCount++;
+                totalAmount = totalAmount.add(tip.getAmount());
+            }
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,211 @@
+package com.mchekin.tipcurrent.broadcast;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mchekin.tipcurrent.dto.RoomTipBatch;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Sequence numbers and recent messages of each room topic, so a client that reconnects can be sent
+ * what it missed. A room's sequence number is the time of the broadcast in microseconds, bumped
+ * when needed to stay strictly increasing. It therefore keeps increasing across restarts and
+ * evictions, and tells when a message went out even after the message has left the log.
+ * <p>
+ * Appending and reading a room's log only happens on the room's shard thread.
+ */
+public class RoomReplayLog {
+
+    public static final String SEQ_HEADER = "seq";
+    public static final String LAST_SEQ_HEADER = "last-seq";
+    public static final String REPLAY_HEADER = "replay";
+
+    private static final Comparator<TipResponse> OLDEST_FIRST = Comparator
+            .comparing(TipResponse::getCreatedAt)
+            .thenComparing(TipResponse::getId);
+
+    /**
+     * Where tips come from when the log does not reach back far enough.
+     */
+    @FunctionalInterface
+    public interface RoomHistory {
+
+        /**
+         * Returns up to {@code limit} of the room's tips created at or after {@code from}, newest
+         * first.
+         */
+        List<TipResponse> newestSince(String roomId, Instant from, int limit);
+    }
+
+    private final RoomHistory history;
+    private final JsonMapper jsonMapper;
+    private final int logSize;
+    private final int historyMaxTips;
+    private final long historyMarginMs;
+    private final Cache<String, RoomLog> rooms;
+    // Reconnects after a deploy all ask for the same gap; they share one query and one frame
+    private final ConcurrentHashMap<HistoryKey, CompletableFuture<Message<byte[]>>> historyInFlight =
+            new ConcurrentHashMap<>();
+
+    private final Counter replayedFromLog;
+    private final Counter replayedFromHistory;
+
+    public RoomReplayLog(RoomHistory history, JsonMapper jsonMapper, MeterRegistry meterRegistry,
+                         int logSize, long maxRooms, int historyMaxTips, long historyMarginMs) {
+        this.history = history;
+        this.jsonMapper = jsonMapper;
+        this.logSize = logSize;
+        this.historyMaxTips = historyMaxTips;
+        this.historyMarginMs = historyMarginMs;
+        this.rooms = Caffeine.newBuilder()
+                .maximumSize(maxRooms)
+                .build();
+        this.replayedFromLog = meterRegistry.counter("tipcurrent.broadcast.replays", "source", "log");
+        this.replayedFromHistory = meterRegistry.counter("tipcurrent.broadcast.replays", "source", "database");
+    }
+
+    /**
+     * Gives the message the room's next sequence number and keeps it for replay.
+     *
+     * @param watched whether the room has subscribers to send the message to
+     * @return the message with its {@value #SEQ_HEADER} header
+     */
+    Message<?> append(String destination, Message<?> message, boolean watched) {
+        RoomLog log = rooms.get(destination, key -> new RoomLog());
+        Instant now = Instant.now();
+        long seq = Math.max(log.lastSeq + 1, micros(now));
+        Message<?> sequenced = withNativeHeader(message, SEQ_HEADER, String.valueOf(seq));
+        log.lastSeq = seq;
+        if (watched) {
+            log.watchedAt = now.toEpochMilli();
+        }
+        log.entries.addLast(new Entry(seq, sequenced));
+        if (log.entries.size() > logSize) {
+            log.entries.removeFirst();
+        }
+        return sequenced;
+    }
+
+    /**
+     * Returns the sequence number of the room's latest message, or {@code 0} when none is logged.
+     */
+    long lastSeq(String destination) {
+        RoomLog log = rooms.getIfPresent(destination);
+        return log == null ? 0 : log.lastSeq;
+    }
+
+    /**
+     * Returns whether the room has no log, or its last message with subscribers to send it to was
+     * appended at least {@code millis} ago. Safe to call from any thread.
+     */
+    boolean unwatchedFor(String destination, long millis) {
+        RoomLog log = rooms.getIfPresent(destination);
+        return log == null || System.currentTimeMillis() - log.watchedAt >= millis;
+    }
+
+    /**
+     * Drops the room's log, so clients resuming in the room are replayed from the database. Safe to
+     * call from any thread: a message the shard appends meanwhile may be lost to the log, but a log
+     * started afresh never claims to reach back past its first message.
+     */
+    void forget(String destination) {
+        rooms.invalidate(destination);
+    }
+
+    /**
+     * Returns the logged messages after {@code lastSeq} in order, or {@code null} when messages
+     * after it may have left the log already.
+     */
+    List<Message<?>> since(String destination, long lastSeq) {
+        RoomLog log = rooms.getIfPresent(destination);
+        if (log == null || log.entries.isEmpty()) {
+            return null;
+        }
+        if (lastSeq >= log.lastSeq) {
+            return List.of();
+        }
+        // The entry right after lastSeq may have been evicted unless lastSeq itself is still logged
+        if (lastSeq < log.entries.getFirst().seq()) {
+            return null;
+        }
+        List<Message<?>> missed = new ArrayList<>();
+        for (Entry entry : log.entries) {
+            if (entry.seq() > lastSeq) {
+                missed.add(entry.message());
+            }
+        }
+        replayedFromLog.increment();
+        return missed;
+    }
+
+    /**
+     * Reads the room's tips since the broadcast numbered {@code lastSeq} from the database, less a
+     * margin for tips that were broadcast some time after they were created, and returns them as one
+     * batch message oldest first. The message has no sequence number and may repeat tips the client
+     * has already seen, or that reach it live as well. Completes with {@code null} when there are no
+     * such tips.
+     */
+    CompletableFuture<Message<byte[]>> fromHistory(String destination, String roomId, long lastSeq, Executor executor) {
+        replayedFromHistory.increment();
+        HistoryKey key = new HistoryKey(destination, lastSeq);
+        CompletableFuture<Message<byte[]>> frame = historyInFlight.computeIfAbsent(key, ignored ->
+                CompletableFuture.supplyAsync(() -> readHistory(destination, roomId, lastSeq), executor));
+        frame.whenComplete((result, error) -> historyInFlight.remove(key, frame));
+        return frame;
+    }
+
+    private Message<byte[]> readHistory(String destination, String roomId, long lastSeq) {
+        Instant from = Instant.EPOCH.plus(lastSeq, ChronoUnit.MICROS).minusMillis(historyMarginMs);
+        List<TipResponse> tips = new ArrayList<>(history.newestSince(roomId, from, historyMaxTips));
+        if (tips.isEmpty()) {
+            return null;
+        }
+        tips.sort(OLDEST_FIRST);
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setNativeHeader(REPLAY_HEADER, "database");
+        return MessageBuilder.createMessage(jsonMapper.writeValueAsBytes(RoomTipBatch.of(roomId, tips)),
+                accessor.getMessageHeaders());
+    }
+
+    static Message<?> withNativeHeader(Message<?> message, String name, String value) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setNativeHeader(name, value);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    private static long micros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+
+    private record Entry(long seq, Message<?> message) {
+    }
+
+    private record HistoryKey(String destination, long lastSeq) {
+    }
+
+    private static final class RoomLog {
+
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private long lastSeq;
+        // Read by other threads deciding whether the room's messages can be skipped
+        private volatile long watchedAt;
+    }
+}
@@ -0,0 +1,21 @@
+package com.mchekin.tipcurrent.broadcast;
+
+/**
+ * What happens to a WebSocket session whose send buffer fills up because the client reads slower
+ * than messages arrive. A send that exceeds the send time limit closes the session under every
+ * policy.
+ */
+public enum SlowConsumerPolicy {
+
+    /** The oldest buffered messages are dropped to make room for new ones. */
+    DROP_OLDEST,
+
+    /** The session is closed. */
+    DISCONNECT,
+
+    /**
+     * Buffered messages are dropped as with {@link #DROP_OLDEST}, and the session stops receiving
+     * individual tips. It gets a periodic summary of each room instead, until its buffer drains.
+     */
+    SUMMARY_ONLY
+}
@@ -0,0 +1,73 @@
+package com.mchekin.tipcurrent.broadcast;
+
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * STOMP WebSocket handler that applies the {@link SlowConsumerPolicy} to each session. A session
+ * has its own send buffer bounded by the send buffer size limit: while one thread writes to a
+ * slow client, messages for that client queue in its buffer instead of holding up the outbound
+ * channel's threads.
+ */
+public class SlowConsumerWebSocketHandler extends SubProtocolWebSocketHandler {
+
+    private final SlowConsumers slowConsumers;
+
+    public SlowConsumerWebSocketHandler(MessageChannel clientInboundChannel, SubscribableChannel clientOutboundChannel,
+                                        SlowConsumers slowConsumers) {
+        super(clientInboundChannel, clientOutboundChannel);
+        this.slowConsumers = slowConsumers;
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+        return new GuardedSession(session, getSendTimeLimit(), getSendBufferSizeLimit());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        slowConsumers.closed(session.getId());
+        super.afterConnectionClosed(session, closeStatus);
+    }
+
+    private class GuardedSession extends ConcurrentWebSocketSessionDecorator {
+
+        private final AtomicBoolean evicted = new AtomicBoolean();
+        private volatile boolean throttled;
+
+        GuardedSession(WebSocketSession session, int sendTimeLimit, int bufferSizeLimit) {
+            super(session, sendTimeLimit, bufferSizeLimit,
+                    slowConsumers.policy() == SlowConsumerPolicy.DISCONNECT ? OverflowStrategy.TERMINATE : OverflowStrategy.DROP);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (!throttled && getOverflowStrategy() == OverflowStrategy.DROP
+                    && getBufferSize() + message.getPayloadLength() > getBufferSizeLimit()) {
+                throttled = true;
+                slowConsumers.throttled(getId());
+            }
+            try {
+                super.sendMessage(message);
+            } catch (SessionLimitExceededException e) {
+                if (evicted.compareAndSet(false, true)) {
+                    slowConsumers.evicted(getId());
+                }
+                throw e;
+            }
+            if (throttled && getBufferSize() == 0) {
+                throttled = false;
+                slowConsumers.caughtUp(getId());
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.mchekin.tipcurrent.broadcast;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks WebSocket sessions that fall behind, shared by the WebSocket handler that detects them
+ * and the {@link RoomBroker} that switches them to summaries under
+ * {@link SlowConsumerPolicy#SUMMARY_ONLY}.
+ */
+@Slf4j
+public class SlowConsumers {
+
+    private final SlowConsumerPolicy policy;
+    private final Set<String> summaryOnly = ConcurrentHashMap.newKeySet();
+    private final Counter throttled;
+    private final Counter evicted;
+
+    public SlowConsumers(SlowConsumerPolicy policy, MeterRegistry meterRegistry) {
+        this.policy = policy;
+        this.throttled = meterRegistry.counter("tipcurrent.broadcast.slow-consumers", "outcome", "throttled");
+        this.evicted = meterRegistry.counter("tipcurrent.broadcast.slow-consumers", "outcome", "evicted");
+        Gauge.builder("tipcurrent.broadcast.sessions.summary-only", summaryOnly, Set::size)
+                .register(meterRegistry);
+    }
+
+    public SlowConsumerPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Records that the session's send buffer overflowed and messages are being dropped.
+     */
+    void throttled(String sessionId) {
+        throttled.increment();
+        if (policy == SlowConsumerPolicy.SUMMARY_ONLY) {
+            summaryOnly.add(sessionId);
+        }
+        log.debug("Session {} fell behind, policy {}", sessionId, policy);
+    }
+
+    /**
+     * Records that the session's send buffer drained, so it can take every message again.
+     */
+    void caughtUp(String sessionId) {
+        summaryOnly.remove(sessionId);
+    }
+
+    /**
+     * Records that the session was closed for exceeding its send buffer or send time limit.
+     */
+    void evicted(String sessionId) {
+        evicted.increment();
+        summaryOnly.remove(sessionId);
+        log.info("Closed slow WebSocket session {}", sessionId);
+    }
+
+    void closed(String sessionId) {
+        summaryOnly.remove(sessionId);
+    }
+
+    boolean isSummaryOnly(String sessionId) {
+        return summaryOnly.contains(sessionId);
+    }
+
+    boolean anySummaryOnly() {
+        return !summaryOnly.isEmpty();
+    }
+}
@@ -0,0 +1,125 @@
+package com.mchekin.tipcurrent.broadcast;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Subscriptions by destination and by session. Each destination spreads its subscribers over a
+ * fixed number of stripes, so a large room can be fanned out one stripe per thread. Fan-out reads
+ * never lock; subscribing and unsubscribing only contend on the destination they change.
+ */
+class SubscriptionRegistry {
+
+    private final int stripeCount;
+    private final ConcurrentHashMap<String, Destination> destinations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, String>> destinationBySubscription =
+            new ConcurrentHashMap<>();
+
+    SubscriptionRegistry(int stripeCount) {
+        this.stripeCount = stripeCount;
+    }
+
+    void subscribe(String sessionId, String subscriptionId, String destination) {
+        Subscriber subscriber = new Subscriber(sessionId, subscriptionId);
+        // Added inside compute, so a concurrent removal of the emptied destination cannot drop it
+        destinations.compute(destination, (key, existing) -> {
+            Destination target = existing != null ? existing : new Destination(stripeCount);
+            target.add(subscriber);
+            return target;
+        });
+        destinationBySubscription.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>())
+                .put(subscriptionId, destination);
+    }
+
+    void unsubscribe(String sessionId, String subscriptionId) {
+        Map<String, String> subscriptions = destinationBySubscription.get(sessionId);
+        String destination = subscriptions == null ? null : subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            remove(destination, new Subscriber(sessionId, subscriptionId));
+        }
+    }
+
+    void unsubscribeAll(String sessionId) {
+        Map<String, String> subscriptions = destinationBySubscription.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, destination) ->
+                    remove(destination, new Subscriber(sessionId, subscriptionId)));
+        }
+    }
+
+    /**
+     * Returns the destination's subscribers, or {@code null} when it has none.
+     */
+    Destination get(String destination) {
+        return destinations.get(destination);
+    }
+
+    int destinationCount() {
+        return destinations.size();
+    }
+
+    int sessionCount() {
+        return destinationBySubscription.size();
+    }
+
+    private void remove(String destination, Subscriber subscriber) {
+        destinations.computeIfPresent(destination, (key, existing) -> {
+            existing.remove(subscriber);
+            return existing.size() == 0 ? null : existing;
+        });
+    }
+
+    record Subscriber(String sessionId, String subscriptionId) {
+    }
+
+    static final class Destination {
+
+        private final Map<Subscriber, Boolean>[] stripes;
+        private final AtomicInteger size = new AtomicInteger();
+
+        @SuppressWarnings("unchecked")
+        private Destination(int stripeCount) {
+            this.stripes = new Map[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new ConcurrentHashMap<>();
+            }
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        int stripeCount() {
+            return stripes.length;
+        }
+
+        Collection<Subscriber> stripe(int index) {
+            return stripes[index].keySet();
+        }
+
+        void forEach(Consumer<Subscriber> action) {
+            for (Map<Subscriber, Boolean> stripe : stripes) {
+                stripe.keySet().forEach(action);
+            }
+        }
+
+        private void add(Subscriber subscriber) {
+            if (stripeOf(subscriber).putIfAbsent(subscriber, Boolean.TRUE) == null) {
+                size.incrementAndGet();
+            }
+        }
+
+        private void remove(Subscriber subscriber) {
+            if (stripeOf(subscriber).remove(subscriber) != null) {
+                size.decrementAndGet();
+            }
+        }
+
+        private Map<Subscriber, Boolean> stripeOf(Subscriber subscriber) {
+            return stripes[Math.floorMod(subscriber.sessionId().hashCode(), stripes.length)];
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.mchekin.tipcurrent.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Routes read-only transactions to read replicas once any replica URL is configured. The application
+ * DataSource defers fetching a physical connection until the first statement, by which time the
+ * transaction has marked the connection read-only: read-only transactions then draw from the
+ * {@link ReplicaDataSource}, everything else from the primary pool.
+ */
+@Configuration
+@ConditionalOnExpression("'${tipcurrent.datasource.replicas.urls:}' != ''")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaDataSource replicaDataSource(
+            HikariDataSource primaryDataSource,
+            DataSourceProperties properties,
+            MeterRegistry meterRegistry,
+            @Value("${tipcurrent.datasource.replicas.urls}") List<String> urls,
+            @Value("${tipcurrent.datasource.replicas.username:${spring.datasource.username}}") String username,
+            @Value("${tipcurrent.datasource.replicas.password:${spring.datasource.password}}") String password,
+            @Value("${tipcurrent.datasource.replicas.pool-size:10}") int poolSize,
+            @Value("${tipcurrent.datasource.replicas.connection-timeout-ms:1000}") long connectionTimeoutMs,
+            @Value("${tipcurrent.datasource.replicas.max-lag-ms:1000}") long maxLagMs) {
+        List<HikariDataSource> replicas = IntStream.range(0, urls.size())
+                .mapToObj(i -> {
+                    HikariDataSource replica = DataSourceBuilder.create()
+                            .type(HikariDataSource.class)
+                            .driverClassName(properties.determineDriverClassName())
+                            .url(urls.get(i).strip())
+                            .username(username)
+                            .password(password)
+                            .build();
+                    replica.setPoolName("replica-" + i);
+                    replica.setMaximumPoolSize(poolSize);
+                    replica.setConnectionTimeout(connectionTimeoutMs);
+                    replica.setReadOnly(true);
+                    return replica;
+                })
+                .toList();
+        return new ReplicaDataSource(primaryDataSource, replicas, maxLagMs, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+}
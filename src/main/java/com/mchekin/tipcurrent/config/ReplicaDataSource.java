@@ -0,0 +1,185 @@
+package com.mchekin.tipcurrent.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections for read-only transactions. Each call hands out a connection to the next healthy
+ * replica, round robin. A replica is healthy while its health check succeeds and its replay lag
+ * stays within the threshold; when none is, or a replica refuses a connection, the read falls
+ * back to the primary.
+ */
+@Slf4j
+public class ReplicaDataSource extends AbstractDataSource {
+
+    // Zero unless the server is a standby with received WAL still waiting to be replayed. Null for a
+    // standby whose WAL receiver is not streaming: with nothing being received, equal receive and
+    // replay positions say nothing about how far behind the primary it is. Without pg_read_all_stats
+    // the receiver's status reads as null, and a running receiver is taken to be streaming.
+    private static final String LAG_QUERY = """
+            SELECT CASE
+                       WHEN NOT pg_is_in_recovery() THEN 0
+                       WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver
+                                        WHERE COALESCE(status, 'streaming') = 'streaming') THEN NULL
+                       WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                       ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0)
+                   END
+            """;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMs;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    public ReplicaDataSource(DataSource primary, List<HikariDataSource> replicas, long maxLagMs,
+                             MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.maxLagMs = maxLagMs;
+        this.replicas = new ArrayList<>(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = new Replica("replica-" + i, replicas.get(i));
+            this.replicas.add(replica);
+            Gauge.builder("tipcurrent.datasource.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+                    .tag("replica", replica.name)
+                    .register(meterRegistry);
+            Gauge.builder("tipcurrent.datasource.replica.lag", replica, r -> r.lagMs)
+                    .tag("replica", replica.name)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+
+        this.replicaReads = meterRegistry.counter("tipcurrent.datasource.reads", "target", "replica");
+        this.primaryReads = meterRegistry.counter("tipcurrent.datasource.reads", "target", "primary");
+    }
+
+    @PostConstruct
+    public void start() {
+        // Replicas start out unhealthy, so check them before the first read rather than a period later
+        checkHealth();
+    }
+
+    @PreDestroy
+    public void stop() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    @Scheduled(fixedDelayString = "${tipcurrent.datasource.replicas.health-check-interval-ms:1000}")
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(5);
+                try (ResultSet resultSet = statement.executeQuery(LAG_QUERY)) {
+                    resultSet.next();
+                    double lagMs = resultSet.getDouble(1);
+                    replica.lagMs = resultSet.wasNull() ? Double.NaN : lagMs;
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.lagMs = Double.NaN;
+                markUnhealthy(replica, e.getMessage());
+                continue;
+            }
+
+            if (Double.isNaN(replica.lagMs)) {
+                markUnhealthy(replica, "WAL receiver is not streaming");
+                continue;
+            }
+
+            if (replica.lagMs > maxLagMs) {
+                markUnhealthy(replica, "replay lag of " + (long) replica.lagMs + " ms exceeds " + maxLagMs + " ms");
+            } else if (!replica.healthy) {
+                replica.healthy = true;
+                log.info("Read replica {} is healthy, lag {} ms", replica.name, (long) replica.lagMs);
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} when at least one replica currently takes reads.
+     */
+    public boolean anyHealthy() {
+        return replicas.stream().anyMatch(replica -> replica.healthy);
+    }
+
+    private Connection route(ConnectionSource source) throws SQLException {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                Connection connection = source.connect(replica.dataSource);
+                replicaReads.increment();
+                return connection;
+            } catch (SQLFeatureNotSupportedException e) {
+                // A pool without per-call credentials is still healthy; the primary may take them
+                log.debug("Read replica {} does not take credentials per connection", replica.name);
+            } catch (SQLException | RuntimeException e) {
+                markUnhealthy(replica, e.getMessage());
+            }
+        }
+
+        primaryReads.increment();
+        return source.connect(primary);
+    }
+
+    private void markUnhealthy(Replica replica, String reason) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            log.warn("Read replica {} is unhealthy, reading from the primary: {}", replica.name, reason);
+            // Pooled connections may be dead; the next recovery starts from fresh ones
+            if (replica.dataSource.getHikariPoolMXBean() != null) {
+                replica.dataSource.getHikariPoolMXBean().softEvictConnections();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection connect(DataSource dataSource) throws SQLException;
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final HikariDataSource dataSource;
+        private volatile boolean healthy;
+        private volatile double lagMs = Double.NaN;
+
+        Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
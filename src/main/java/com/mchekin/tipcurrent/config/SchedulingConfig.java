@@ -0,0 +1,64 @@
+package com.mchekin.tipcurrent.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One scheduler per kind of {@code @Scheduled} job, so a long run of one cannot hold up the others:
+ * short housekeeping tasks such as replica health checks run on the default scheduler, the hourly
+ * stats aggregation and the database maintenance jobs each on their own. WebSocket heartbeats do
+ * not use any of them; the room broker keeps its own timer wheel.
+ * <p>
+ * Each scheduler runs a probe every second and reports how late it started as
+ * {@code tipcurrent.scheduler.lag}, tagged with the scheduler's name.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    public static final String AGGREGATION_SCHEDULER = "aggregationTaskScheduler";
+    public static final String MAINTENANCE_SCHEDULER = "maintenanceTaskScheduler";
+
+    private static final Duration LAG_PROBE_INTERVAL = Duration.ofSeconds(1);
+
+    /**
+     * The default scheduler, used by {@code @Scheduled} jobs that name none.
+     */
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(MeterRegistry meterRegistry) {
+        return scheduler("housekeeping", meterRegistry);
+    }
+
+    @Bean(AGGREGATION_SCHEDULER)
+    public ThreadPoolTaskScheduler aggregationTaskScheduler(MeterRegistry meterRegistry) {
+        return scheduler("aggregation", meterRegistry);
+    }
+
+    @Bean(MAINTENANCE_SCHEDULER)
+    public ThreadPoolTaskScheduler maintenanceTaskScheduler(MeterRegistry meterRegistry) {
+        return scheduler("maintenance", meterRegistry);
+    }
+
+    private static ThreadPoolTaskScheduler scheduler(String name, MeterRegistry meterRegistry) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix(name + "-");
+        scheduler.initialize();
+
+        // A fixed-rate task is due a whole number of intervals after its first run
+        Timer lag = meterRegistry.timer("tipcurrent.scheduler.lag", "scheduler", name);
+        long first = System.nanoTime();
+        AtomicLong runs = new AtomicLong();
+        scheduler.scheduleAtFixedRate(() -> {
+            long due = first + runs.getAndIncrement() * LAG_PROBE_INTERVAL.toNanos();
+            lag.record(Math.max(0, System.nanoTime() - due), TimeUnit.NANOSECONDS);
+        }, LAG_PROBE_INTERVAL);
+        return scheduler;
+    }
+}
@@ -1,37 +1,131 @@
 package com.mchekin.tipcurrent.config;
 
+import com.mchekin.tipcurrent.broadcast.RoomAudience;
+import com.mchekin.tipcurrent.broadcast.RoomBroker;
+import com.mchekin.tipcurrent.broadcast.RoomReplayLog;
+import com.mchekin.tipcurrent.broadcast.SlowConsumerPolicy;
+import com.mchekin.tipcurrent.broadcast.SlowConsumerWebSocketHandler;
+import com.mchekin.tipcurrent.broadcast.SlowConsumers;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.repository.TipRepositoryCustom.TipFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.messaging.simp.user.UserDestinationResolver;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
-import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import tools.jackson.databind.json.JsonMapper;
 
+/**
+ * STOMP over WebSocket with the {@link RoomBroker} in place of Spring's simple broker, and a
+ * WebSocket handler that bounds each session's send buffer and applies the slow-consumer policy.
+ * Both beans keep the names of the ones they replace, so the rest of the messaging infrastructure
+ * picks them up unchanged.
+ */
 @Configuration
-@EnableWebSocketMessageBroker
-@EnableScheduling
-public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+public class WebSocketConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    private final MeterRegistry meterRegistry;
+    private final JsonMapper jsonMapper;
+    private final RoomBroker.Settings brokerSettings;
+    private final SlowConsumers slowConsumers;
+    private final RoomReplayLog replayLog;
+    private final RoomAudience roomAudience;
+    private final int sendTimeLimitMs;
+    private final int sendBufferSizeLimit;
+
+    public WebSocketConfig(
+            MeterRegistry meterRegistry,
+            JsonMapper jsonMapper,
+            ObjectProvider<TipRepository> tipRepository,
+            @Value("${tipcurrent.broadcast.shards:0}") int shards,
+            @Value("${tipcurrent.broadcast.workers:0}") int workers,
+            @Value("${tipcurrent.broadcast.parallel-threshold:1000}") int parallelThreshold,
+            @Value("${tipcurrent.broadcast.coalescing.window-ms:0}") long coalescingWindowMs,
+            @Value("${tipcurrent.broadcast.skip-unwatched-rooms-after-ms:60000}") long skipUnwatchedRoomsAfterMs,
+            @Value("${tipcurrent.broadcast.session.send-time-limit-ms:10000}") int sendTimeLimitMs,
+            @Value("${tipcurrent.broadcast.session.send-buffer-size-limit:524288}") int sendBufferSizeLimit,
+            @Value("${tipcurrent.broadcast.slow-consumer.policy:DISCONNECT}") SlowConsumerPolicy slowConsumerPolicy,
+            @Value("${tipcurrent.broadcast.slow-consumer.summary-interval-ms:5000}") long summaryIntervalMs,
+            @Value("${tipcurrent.broadcast.heartbeat.interval-ms:10000}") long heartbeatIntervalMs,
+            @Value("${tipcurrent.broadcast.heartbeat.tick-ms:100}") long heartbeatTickMs,
+            @Value("${tipcurrent.broadcast.replay.log-size:500}") int replayLogSize,
+            @Value("${tipcurrent.broadcast.replay.max-rooms:10000}") long replayMaxRooms,
+            @Value("${tipcurrent.broadcast.replay.db-max-tips:1000}") int replayDbMaxTips,
+            @Value("${tipcurrent.broadcast.replay.db-margin-ms:10000}") long replayDbMarginMs) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.meterRegistry = meterRegistry;
+        this.jsonMapper = jsonMapper;
+        this.brokerSettings = new RoomBroker.Settings(
+                shards > 0 ? shards : processors,
+                workers > 0 ? workers : processors,
+                parallelThreshold,
+                coalescingWindowMs,
+                summaryIntervalMs,
+                heartbeatIntervalMs,
+                heartbeatTickMs);
+        this.slowConsumers = new SlowConsumers(slowConsumerPolicy, meterRegistry);
+        // Outside a transaction the query runs on the primary, so replicas lagging behind cannot hide tips
+        this.replayLog = new RoomReplayLog(
+                (roomId, from, limit) -> tipRepository.getObject()
+                        .findPage(new TipFilter(roomId, null, null, from, null), null, limit, true),
+                jsonMapper, meterRegistry, replayLogSize, replayMaxRooms, replayDbMaxTips, replayDbMarginMs);
+        this.roomAudience = new RoomAudience(brokerSettings.workers(), replayLog, meterRegistry, skipUnwatchedRoomsAfterMs);
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+    }
+
+    @Bean
+    @Override
+    public AbstractBrokerMessageHandler simpleBrokerMessageHandler(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel clientOutboundChannel,
+            @Qualifier("brokerChannel") AbstractSubscribableChannel brokerChannel,
+            UserDestinationResolver userDestinationResolver) {
+        return new RoomBroker(clientInboundChannel, clientOutboundChannel, brokerChannel, meterRegistry,
+                jsonMapper, slowConsumers, replayLog, roomAudience, brokerSettings);
+    }
 
     @Bean
-    public TaskScheduler taskScheduler() {
-        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
-        scheduler.setPoolSize(1);
-        scheduler.setThreadNamePrefix("websocket-heartbeat-");
-        scheduler.initialize();
-        return scheduler;
+    public RoomAudience roomAudience() {
+        return roomAudience;
+    }
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel clientOutboundChannel) {
+        SlowConsumerWebSocketHandler handler =
+                new SlowConsumerWebSocketHandler(clientInboundChannel, clientOutboundChannel, slowConsumers);
+        handler.setPhase(getPhase());
+        return handler;
+    }
+
+    @Override
+    protected void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        super.configureWebSocketTransport(registration);
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit);
     }
 
     @Override
-    public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+    protected void configureMessageBroker(MessageBrokerRegistry config) {
+        super.configureMessageBroker(config);
         config.setApplicationDestinationPrefixes("/app");
     }
 
     @Override
-    public void registerStompEndpoints(StompEndpointRegistry registry) {
+    protected void registerStompEndpoints(StompEndpointRegistry registry) {
+        super.registerStompEndpoints(registry);
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*");
     }
@@ -7,6 +7,7 @@ import com.mchekin.tipcurrent.dto.RoomStatsSummary;
 import com.mchekin.tipcurrent.repository.RoomStatsHourlyRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
@@ -21,6 +22,7 @@ public class AnalyticsController {
 
     private final RoomStatsHourlyRepository statsRepository;
 
+    @Transactional(readOnly = true)
     @GetMapping("/rooms/{roomId}/stats")
     public ResponseEntity<RoomStatsResponse> getRoomStats(
             @PathVariable String roomId,
@@ -0,0 +1,31 @@
+package com.mchekin.tipcurrent.controller;
+
+import com.mchekin.tipcurrent.broadcast.RoomAudience;
+import com.mchekin.tipcurrent.dto.RoomLeaderboardResponse;
+import com.mchekin.tipcurrent.dto.RoomViewersResponse;
+import com.mchekin.tipcurrent.service.RoomLeaderboards;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/rooms")
+@RequiredArgsConstructor
+public class RoomController {
+
+    private final RoomAudience roomAudience;
+    private final RoomLeaderboards roomLeaderboards;
+
+    @GetMapping("/{roomId}/viewers")
+    public ResponseEntity<RoomViewersResponse> getViewers(@PathVariable String roomId) {
+        return ResponseEntity.ok(RoomViewersResponse.builder()
+                .roomId(roomId)
+                .viewers(roomAudience.viewers(roomId))
+                .build());
+    }
+
+    @GetMapping("/{roomId}/leaderboard")
+    public ResponseEntity<RoomLeaderboardResponse> getLeaderboard(@PathVariable String roomId) {
+        return ResponseEntity.ok(roomLeaderboards.get(roomId));
+    }
+}
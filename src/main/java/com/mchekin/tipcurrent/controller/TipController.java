@@ -1,117 +1,212 @@
 package com.mchekin.tipcurrent.controller;
 
-import com.mchekin.tipcurrent.domain.IdempotencyRecord;
 import com.mchekin.tipcurrent.domain.Tip;
+import com.mchekin.tipcurrent.dto.BatchTipRequest;
+import com.mchekin.tipcurrent.dto.BatchTipResult;
 import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.TipCursor;
+import com.mchekin.tipcurrent.dto.TipPageResponse;
 import com.mchekin.tipcurrent.dto.TipResponse;
-import com.mchekin.tipcurrent.repository.IdempotencyRecordRepository;
 import com.mchekin.tipcurrent.repository.TipRepository;
-import com.mchekin.tipcurrent.service.WebhookService;
+import com.mchekin.tipcurrent.repository.TipRepositoryCustom;
+import com.mchekin.tipcurrent.service.GroupCommitTimeoutException;
+import com.mchekin.tipcurrent.service.GroupCommitTipWriter;
+import com.mchekin.tipcurrent.service.IdempotencyKeyMismatchException;
+import com.mchekin.tipcurrent.service.RecentTipsCache;
+import com.mchekin.tipcurrent.service.TipBatchService;
+import com.mchekin.tipcurrent.service.TipExportService;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.io.IOException;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/tips")
 @RequiredArgsConstructor
 public class TipController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final TipRepository tipRepository;
-    private final IdempotencyRecordRepository idempotencyRepository;
-    private final SimpMessagingTemplate messagingTemplate;
-    private final WebhookService webhookService;
+    private final GroupCommitTipWriter groupCommitTipWriter;
+    private final TipBatchService tipBatchService;
+    private final RecentTipsCache recentTipsCache;
+    private final TipExportService tipExportService;
+    private final JsonMapper jsonMapper;
 
     @PostMapping
-    public ResponseEntity<TipResponse> createTip(
+    public ResponseEntity<?> createTip(
             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @RequestBody CreateTipRequest request) {
 
-        // Check for existing idempotency record
-        if (idempotencyKey != null) {
-            Optional<IdempotencyRecord> existing = idempotencyRepository.findById(idempotencyKey);
-
-            if (existing.isPresent()) {
-                // Return cached result
-                Tip tip = tipRepository.findById(existing.get().getResourceId())
-                        .orElseThrow(() -> new IllegalStateException("Tip not found for idempotency key"));
-                return ResponseEntity.ok(toResponse(tip));
-            }
+        TipBatchService.TipWrite write = new TipBatchService.TipWrite(idempotencyKey, toTip(request));
+
+        TipBatchService.TipWriteResult result;
+        try {
+            result = groupCommitTipWriter.isEnabled()
+                    ? groupCommitTipWriter.write(write)
+                    : tipBatchService.createTips(List.of(write)).getFirst();
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (GroupCommitTimeoutException e) {
+            // The tip may still commit; only a retry with the same Idempotency-Key is safe
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        } catch (IdempotencyKeyMismatchException e) {
+            return ResponseEntity.unprocessableContent().build();
         }
 
-        Tip tip = Tip.builder()
-                .roomId(request.getRoomId())
-                .senderId(request.getSenderId())
-                .recipientId(request.getRecipientId())
-                .amount(request.getAmount())
-                .message(request.getMessage())
-                .metadata(request.getMetadata())
-                .build();
+        if (result.replayed()) {
+            // Return the response recorded with the key, byte for byte
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(result.responseBody());
+        }
 
-        Tip savedTip = tipRepository.save(tip);
+        // The tip's event carries these same bytes; the outbox relay sends it to WebSocket subscribers
+        // and webhooks once the tip has committed
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(result.responseBody());
+    }
 
-        // Save idempotency record
-        if (idempotencyKey != null) {
-            idempotencyRepository.save(IdempotencyRecord.builder()
-                    .idempotencyKey(idempotencyKey)
-                    .resourceId(savedTip.getId())
-                    .resourceType("Tip")
-                    .createdAt(Instant.now())
-                    .expiresAt(Instant.now().plus(24, ChronoUnit.HOURS))
-                    .build());
+    @PostMapping("/batch")
+    public ResponseEntity<List<BatchTipResult>> createTips(@RequestBody List<BatchTipRequest> requests) {
+        if (requests.isEmpty() || requests.size() > tipBatchService.getMaxBatchSize()) {
+            return ResponseEntity.badRequest().build();
         }
 
-        TipResponse response = toResponse(savedTip);
+        List<TipBatchService.TipWrite> writes = requests.stream()
+                .map(request -> new TipBatchService.TipWrite(request.getIdempotencyKey(), toTip(request.getTip())))
+                .toList();
 
-        // Broadcast tip event to WebSocket subscribers
-        messagingTemplate.convertAndSend("/topic/rooms/" + savedTip.getRoomId(), response);
+        List<TipBatchService.TipWriteResult> results;
+        try {
+            // Fan out once per room rather than once per tip
+            results = tipBatchService.createTips(writes, TipBatchService.FanOut.PER_ROOM);
+        } catch (IdempotencyKeyMismatchException e) {
+            return ResponseEntity.unprocessableContent().build();
+        }
 
-        // Notify webhooks asynchronously
-        webhookService.notifyWebhooks(savedTip.getRoomId(), "tip.created", response);
+        List<BatchTipResult> response = new ArrayList<>(results.size());
+        boolean anyCreated = false;
+
+        for (TipBatchService.TipWriteResult result : results) {
+            TipResponse tipResponse = result.replayed()
+                    ? jsonMapper.readValue(result.responseBody(), TipResponse.class)
+                    : toResponse(result.tip());
+            response.add(BatchTipResult.builder()
+                    .idempotencyKey(result.idempotencyKey())
+                    .replayed(result.replayed())
+                    .tip(tipResponse)
+                    .build());
+            anyCreated |= !result.replayed();
+        }
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        HttpStatus status = anyCreated ? HttpStatus.CREATED : HttpStatus.OK;
+        return ResponseEntity.status(status).body(response);
     }
 
+    @Transactional(readOnly = true)
     @GetMapping
-    public ResponseEntity<Page<TipResponse>> getTips(
+    public ResponseEntity<TipPageResponse> getTips(
             @RequestParam(required = false) String roomId,
             @RequestParam(required = false) String recipientId,
             @RequestParam(required = false) String senderId,
-            @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "none") String count,
+            @RequestParam(defaultValue = "false") boolean includeMetadata
     ) {
-        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "createdAt"));
-
-        Page<Tip> tips;
-
-        if (roomId != null && recipientId != null) {
-            tips = tipRepository.findByRoomIdAndRecipientId(roomId, recipientId, pageable);
-        } else if (roomId != null && senderId != null) {
-            tips = tipRepository.findByRoomIdAndSenderId(roomId, senderId, pageable);
-        } else if (roomId != null) {
-            tips = tipRepository.findByRoomId(roomId, pageable);
-        } else if (recipientId != null) {
-            tips = tipRepository.findByRecipientId(recipientId, pageable);
-        } else if (senderId != null) {
-            tips = tipRepository.findBySenderId(senderId, pageable);
-        } else {
-            tips = tipRepository.findAll(pageable);
+        if (from != null && to != null && !from.isBefore(to)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        TipCursor after;
+        try {
+            after = cursor == null ? null : TipCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
 
-        Page<TipResponse> response = tips.map(this::toResponse);
+        TipRepositoryCustom.TipFilter filter = new TipRepositoryCustom.TipFilter(roomId, recipientId, senderId, from, to);
+        int pageSize = Math.clamp(size, 1, MAX_PAGE_SIZE);
+
+        Long totalElements;
+        switch (count) {
+            case "none" -> totalElements = null;
+            case "exact" -> totalElements = tipRepository.countMatching(filter);
+            case "estimate" -> totalElements = tipRepository.estimateMatching(filter);
+            default -> {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
+        if (roomId != null && recipientId == null && senderId == null && from == null && to == null && after == null) {
+            RecentTipsCache.Page recent = recentTipsCache.firstPage(roomId, pageSize, includeMetadata);
+            if (recent != null) {
+                return ResponseEntity.ok(TipPageResponse.builder()
+                        .content(recent.tips())
+                        .next(recent.next())
+                        .totalElements(totalElements)
+                        .build());
+            }
+        }
+
+        // One extra row tells whether another page follows
+        List<TipResponse> tips = tipRepository.findPage(filter, after, pageSize + 1, includeMetadata);
+        boolean hasNext = tips.size() > pageSize;
+        if (hasNext) {
+            tips = tips.subList(0, pageSize);
+        }
+
+        TipResponse last = tips.isEmpty() ? null : tips.getLast();
+        TipPageResponse response = TipPageResponse.builder()
+                .content(tips)
+                .next(hasNext ? new TipCursor(last.getCreatedAt(), last.getId()).encode() : null)
+                .totalElements(totalElements)
+                .build();
 
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/export")
+    public void exportTips(
+            @RequestParam(required = false) String roomId,
+            @RequestParam(required = false) String recipientId,
+            @RequestParam(required = false) String senderId,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(defaultValue = "false") boolean includeMetadata,
+            HttpServletResponse response
+    ) throws IOException {
+        if (from != null && to != null && !from.isBefore(to)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+
+        // Written on the request thread straight to the response, so no async timeout cuts a long export short
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        TipRepositoryCustom.TipFilter filter = new TipRepositoryCustom.TipFilter(roomId, recipientId, senderId, from, to);
+        tipExportService.export(filter, includeMetadata, response.getOutputStream());
+    }
+
+    @Transactional(readOnly = true)
     @GetMapping("/{id}")
     public ResponseEntity<TipResponse> getTipById(@PathVariable Long id) {
         Optional<Tip> tip = tipRepository.findById(id);
@@ -123,16 +218,18 @@ public class TipController {
         return ResponseEntity.ok(toResponse(tip.get()));
     }
 
-    private TipResponse toResponse(Tip tip) {
-        return TipResponse.builder()
-                .id(tip.getId())
-                .roomId(tip.getRoomId())
-                .senderId(tip.getSenderId())
-                .recipientId(tip.getRecipientId())
-                .amount(tip.getAmount())
-                .message(tip.getMessage())
-                .metadata(tip.getMetadata())
-                .createdAt(tip.getCreatedAt())
+    private Tip toTip(CreateTipRequest request) {
+        return Tip.builder()
+                .roomId(request.getRoomId())
+                .senderId(request.getSenderId())
+                .recipientId(request.getRecipientId())
+                .amount(request.getAmount())
+                .message(request.getMessage())
+                .metadata(request.getMetadata())
                 .build();
     }
+
+    private TipResponse toResponse(Tip tip) {
+        return TipResponse.from(tip);
+    }
 }
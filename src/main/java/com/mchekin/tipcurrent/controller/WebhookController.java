@@ -12,6 +12,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -41,6 +42,7 @@ public class WebhookController {
         return ResponseEntity.status(HttpStatus.CREATED).body(toResponse(savedWebhook));
     }
 
+    @Transactional(readOnly = true)
     @GetMapping
     public ResponseEntity<List<WebhookResponse>> listWebhooks(
             @RequestParam(required = false) String roomId,
@@ -65,6 +67,7 @@ public class WebhookController {
         return ResponseEntity.ok(responses);
     }
 
+    @Transactional(readOnly = true)
     @GetMapping("/{id}")
     public ResponseEntity<WebhookResponse> getWebhook(@PathVariable Long id) {
         return webhookRepository.findById(id)
@@ -72,6 +75,7 @@ public class WebhookController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @Transactional
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteWebhook(@PathVariable Long id) {
         if (!webhookRepository.existsById(id)) {
@@ -82,6 +86,7 @@ public class WebhookController {
         return ResponseEntity.noContent().build();
     }
 
+    @Transactional
     @PatchMapping("/{id}/enable")
     public ResponseEntity<WebhookResponse> enableWebhook(@PathVariable Long id) {
         return webhookRepository.findById(id)
@@ -93,6 +98,7 @@ public class WebhookController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @Transactional
     @PatchMapping("/{id}/disable")
     public ResponseEntity<WebhookResponse> disableWebhook(@PathVariable Long id) {
         return webhookRepository.findById(id)
@@ -114,6 +120,7 @@ public class WebhookController {
         return ResponseEntity.accepted().build();
     }
 
+    @Transactional(readOnly = true)
     @GetMapping("/{id}/deliveries")
     public ResponseEntity<Page<WebhookDeliveryLog>> getDeliveries(
             @PathVariable Long id,
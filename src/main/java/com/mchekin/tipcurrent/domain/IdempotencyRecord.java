@@ -28,6 +28,11 @@ public class IdempotencyRecord {
     @Column(nullable = false, length = 50)
     private String resourceType;
 
+    @Column(length = 64)
+    private String requestFingerprint;
+
+    private byte[] responseBody;
+
     @Column(nullable = false, updatable = false)
     private Instant createdAt;
 
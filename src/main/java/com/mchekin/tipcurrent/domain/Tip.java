@@ -5,16 +5,15 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 @Entity
-@Table(name = "tips", indexes = {
-    @Index(name = "idx_room_id", columnList = "roomId"),
-    @Index(name = "idx_recipient_id", columnList = "recipientId"),
-    @Index(name = "idx_created_at", columnList = "createdAt")
-})
+// Range partitioned by created_at; the table, its partitions and indexes are managed in schema.sql
+@Table(name = "tips")
 @Data
 @Builder
 @NoArgsConstructor
@@ -22,7 +21,9 @@ import java.time.Instant;
 public class Tip {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tips_seq")
+    @SequenceGenerator(name = "tips_seq", sequenceName = "tips_seq", allocationSize = 50)
+    @ColumnDefault("nextval('tips_seq')")
     private Long id;
 
     @Column(nullable = false)
@@ -49,7 +50,8 @@ public class Tip {
     @PrePersist
     protected void onCreate() {
         if (createdAt == null) {
-            createdAt = Instant.now();
+            // Postgres keeps microseconds; truncating here keeps the returned tip equal to the stored one
+            createdAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.mchekin.tipcurrent.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A pending POST of one event to one webhook. The outbox relay writes it in the transaction that
+ * dispatches the event, and it is deleted once the delivery has succeeded or run out of attempts
+ * and its outcome is in {@code webhook_delivery_logs}.
+ */
+@Entity
+@Table(name = "webhook_deliveries",
+    indexes = {
+        @Index(name = "idx_webhook_deliveries_next_attempt_at", columnList = "nextAttemptAt")
+    }
+)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebhookDelivery {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "webhook_deliveries_seq")
+    @SequenceGenerator(name = "webhook_deliveries_seq", sequenceName = "webhook_deliveries_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long webhookId;
+
+    @Column(nullable = false, length = 100)
+    private String event;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    // Attempts started so far, counted when a delivery is claimed
+    @Column(nullable = false)
+    private Integer attempts;
+
+    @Column(nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        Instant now = Instant.now();
+        createdAt = now;
+        if (nextAttemptAt == null) {
+            nextAttemptAt = now;
+        }
+        if (attempts == null) {
+            attempts = 0;
+        }
+    }
+}
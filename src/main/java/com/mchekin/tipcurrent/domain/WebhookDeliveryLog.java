@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.Instant;
 
@@ -22,7 +23,9 @@ import java.time.Instant;
 public class WebhookDeliveryLog {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "webhook_delivery_logs_seq")
+    @SequenceGenerator(name = "webhook_delivery_logs_seq", sequenceName = "webhook_delivery_logs_seq", allocationSize = 50)
+    @ColumnDefault("nextval('webhook_delivery_logs_seq')")
     private Long id;
 
     @Column(nullable = false)
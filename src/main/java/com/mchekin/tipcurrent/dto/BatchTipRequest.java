@@ -0,0 +1,19 @@
+package com.mchekin.tipcurrent.dto;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTipRequest {
+
+    private String idempotencyKey;
+
+    @JsonUnwrapped
+    private CreateTipRequest tip;
+}
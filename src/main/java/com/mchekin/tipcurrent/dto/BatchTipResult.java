@@ -0,0 +1,17 @@
+package com.mchekin.tipcurrent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTipResult {
+
+    private String idempotencyKey;
+    private boolean replayed;
+    private TipResponse tip;
+}
@@ -0,0 +1,15 @@
+package com.mchekin.tipcurrent.dto;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An event payload serialized to JSON once. The WebSocket broadcast and every webhook delivery
+ * of the event send these same bytes, so serializing a payload costs the same however many
+ * consumers it has. The array is shared and must never be modified.
+ */
+public record EncodedEvent(String name, byte[] json) {
+
+    public static EncodedEvent of(String name, String json) {
+        return new EncodedEvent(name, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
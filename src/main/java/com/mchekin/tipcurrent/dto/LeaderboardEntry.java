@@ -0,0 +1,19 @@
+package com.mchekin.tipcurrent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LeaderboardEntry {
+
+    private int rank;
+    private String senderId;
+    private BigDecimal amount;
+}
@@ -0,0 +1,22 @@
+package com.mchekin.tipcurrent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A room's top tippers by total amount, highest first. Served by the REST API and pushed on the
+ * room's leaderboard topic whenever the ranking changes.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomLeaderboardResponse {
+
+    private String roomId;
+    private List<LeaderboardEntry> entries;
+}
@@ -0,0 +1,23 @@
+package com.mchekin.tipcurrent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Running totals of every tip a room has received, pushed on the room's stats topic as they change.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomLiveStats {
+
+    private String roomId;
+    private long totalTips;
+    private BigDecimal totalAmount;
+    private long uniqueSenders;
+}
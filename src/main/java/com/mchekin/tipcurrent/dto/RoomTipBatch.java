@@ -0,0 +1,30 @@
+package com.mchekin.tipcurrent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomTipBatch {
+
+    private String roomId;
+    private List<TipResponse> tips;
+    private int tipCount;
+    private BigDecimal totalAmount;
+
+    public static RoomTipBatch of(String roomId, List<TipResponse> tips) {
+        return RoomTipBatch.builder()
+                .roomId(roomId)
+                .tips(tips)
+                .tipCount(tips.size())
+                .totalAmount(tips.stream().map(TipResponse::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add))
+                .build();
+    }
+}
@@ -0,0 +1,23 @@
+package com.mchekin.tipcurrent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Count and total of the tips a room received over one summary interval, sent instead of the tips
+ * themselves to sessions that fell behind.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomTipSummary {
+
+    private String roomId;
+    private int tipCount;
+    private BigDecimal totalAmount;
+}
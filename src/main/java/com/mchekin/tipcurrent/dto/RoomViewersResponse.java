@@ -0,0 +1,19 @@
+package com.mchekin.tipcurrent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Live WebSocket subscriptions to a room's topic on the node that answered.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomViewersResponse {
+
+    private String roomId;
+    private int viewers;
+}
@@ -0,0 +1,25 @@
+package com.mchekin.tipcurrent.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TipPageResponse {
+
+    private List<TipResponse> content;
+
+    // Token for the following page; null on the last page
+    private String next;
+
+    // Only present when requested with count=exact or count=estimate
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long totalElements;
+}
@@ -1,5 +1,6 @@
 package com.mchekin.tipcurrent.dto;
 
+import com.mchekin.tipcurrent.domain.Tip;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -9,7 +10,7 @@ import java.math.BigDecimal;
 import java.time.Instant;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class TipResponse {
@@ -22,4 +23,17 @@ public class TipResponse {
     private String message;
     private String metadata;
     private Instant createdAt;
+
+    public static TipResponse from(Tip tip) {
+        return TipResponse.builder()
+                .id(tip.getId())
+                .roomId(tip.getRoomId())
+                .senderId(tip.getSenderId())
+                .recipientId(tip.getRecipientId())
+                .amount(tip.getAmount())
+                .message(tip.getMessage())
+                .metadata(tip.getMetadata())
+                .createdAt(tip.getCreatedAt())
+                .build();
+    }
 }
@@ -3,15 +3,33 @@ package com.mchekin.tipcurrent.repository;
 import com.mchekin.tipcurrent.domain.IdempotencyRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 
 @Repository
-public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String>,
+        IdempotencyRecordRepositoryCustom {
 
+    /**
+     * Deletes at most {@code limit} records that expired before the threshold, in its own short
+     * transaction. Rows locked by a concurrent writer are skipped rather than waited on.
+     *
+     * @return the number of records deleted
+     */
     @Modifying
     @Transactional
-    void deleteByExpiresAtBefore(Instant threshold);
+    @Query(value = """
+            DELETE FROM idempotency_records
+            WHERE idempotency_key IN (
+                SELECT idempotency_key FROM idempotency_records
+                WHERE expires_at < :threshold
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            """, nativeQuery = true)
+    int deleteExpiredChunk(@Param("threshold") Instant threshold, @Param("limit") int limit);
 }
@@ -0,0 +1,31 @@
+package com.mchekin.tipcurrent.repository;
+
+import com.mchekin.tipcurrent.domain.IdempotencyRecord;
+import com.mchekin.tipcurrent.domain.Tip;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface IdempotencyRecordRepositoryCustom {
+
+    /**
+     * Gives tips without an id one from the tips sequence, and a creation time, ahead of
+     * {@link #insertTipsIfAbsent} so their responses can be rendered before the insert.
+     */
+    void assignIdentity(Collection<Tip> tips);
+
+    /**
+     * Claims idempotency keys and inserts their tips in a single statement: each record is inserted with
+     * {@code INSERT ... ON CONFLICT DO NOTHING} and its tip is only inserted when the claim succeeded.
+     * Keys that were already recorded keep their original record, which is returned keyed by idempotency
+     * key; every key absent from the result was claimed and its tip inserted by this call. The existing
+     * record is looked up in the same statement for {@code probeKeys}; keys left out are expected to be
+     * new and cost a follow-up query if not. Tips must already have their identity assigned.
+     */
+    Map<String, IdempotencyRecord> insertTipsIfAbsent(List<TipClaim> claims, Set<String> probeKeys);
+
+    record TipClaim(IdempotencyRecord record, Tip tip) {
+    }
+}
@@ -0,0 +1,195 @@
+package com.mchekin.tipcurrent.repository;
+
+import com.mchekin.tipcurrent.domain.IdempotencyRecord;
+import com.mchekin.tipcurrent.domain.Tip;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RequiredArgsConstructor
+class IdempotencyRecordRepositoryCustomImpl implements IdempotencyRecordRepositoryCustom {
+
+    // Data-modifying CTEs always run to completion. The outer SELECT runs on the statement's
+    // snapshot, so it sees keys recorded before this statement but not the rows the CTEs insert:
+    // a key is either claimed (and its tip inserted) here or replayed. Existing records are only
+    // looked up for the probed keys; any other key that fails its claim is resolved afterwards.
+    private static final String INSERT_SQL = """
+            WITH input AS (
+                SELECT * FROM unnest(?::varchar[], ?::bigint[], ?::varchar[], ?::varchar[], ?::varchar[],
+                                     ?::numeric[], ?::varchar[], ?::text[], ?::timestamptz[],
+                                     ?::varchar[], ?::bytea[], ?::timestamptz[], ?::timestamptz[])
+                    AS i(idempotency_key, id, room_id, sender_id, recipient_id, amount, message, metadata, tip_created_at,
+                         request_fingerprint, response_body, created_at, expires_at)
+            ), claimed AS (
+                INSERT INTO idempotency_records (idempotency_key, resource_id, resource_type, request_fingerprint,
+                                                 response_body, created_at, expires_at)
+                SELECT idempotency_key, id, 'Tip', request_fingerprint, response_body, created_at, expires_at FROM input
+                ON CONFLICT (idempotency_key) DO NOTHING
+                RETURNING idempotency_key
+            ), inserted AS (
+                INSERT INTO tips (id, room_id, sender_id, recipient_id, amount, message, metadata, created_at)
+                SELECT i.id, i.room_id, i.sender_id, i.recipient_id, i.amount, i.message, i.metadata, i.tip_created_at
+                FROM input i
+                JOIN claimed c ON c.idempotency_key = i.idempotency_key
+            )
+            SELECT idempotency_key, TRUE AS claimed, NULL::bigint AS resource_id, NULL AS resource_type,
+                   NULL AS request_fingerprint, NULL::bytea AS response_body,
+                   NULL::timestamptz AS created_at, NULL::timestamptz AS expires_at
+            FROM claimed
+            UNION ALL
+            SELECT idempotency_key, FALSE, resource_id, resource_type, request_fingerprint, response_body,
+                   created_at, expires_at
+            FROM idempotency_records
+            WHERE idempotency_key = ANY (?::varchar[])
+            """;
+
+    private static final String FIND_SQL = """
+            SELECT idempotency_key, resource_id, resource_type, request_fingerprint, response_body,
+                   created_at, expires_at
+            FROM idempotency_records
+            WHERE idempotency_key = ANY (?::varchar[])
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    /**
+     * Draws ids from the same pooled generator Hibernate uses for {@link Tip}, so most batches
+     * need no sequence round trip and ids never collide with tips persisted through JPA.
+     */
+    @Override
+    public void assignIdentity(Collection<Tip> tips) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        BeforeExecutionGenerator generator = (BeforeExecutionGenerator) session
+                .getEntityPersister(Tip.class.getName(), null)
+                .getGenerator();
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+
+        for (Tip tip : tips) {
+            if (tip.getId() == null) {
+                tip.setId((Long) generator.generate(session, tip, null, EventType.INSERT));
+            }
+            if (tip.getCreatedAt() == null) {
+                tip.setCreatedAt(now);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, IdempotencyRecord> insertTipsIfAbsent(List<TipClaim> claims, Set<String> probeKeys) {
+        Map<String, IdempotencyRecord> recorded = new HashMap<>();
+        if (claims.isEmpty()) {
+            return recorded;
+        }
+
+        Set<String> claimed = new HashSet<>();
+        jdbcTemplate.query(connection -> prepareInsert(connection, claims, probeKeys), (ResultSet rs) -> {
+            String key = rs.getString("idempotency_key");
+            if (rs.getBoolean("claimed")) {
+                claimed.add(key);
+            } else {
+                recorded.put(key, mapRecord(rs));
+            }
+        });
+
+        // Unprobed keys that were already recorded, and keys a concurrent transaction committed after
+        // this statement started, fail their claim without showing up above; a fresh statement sees them.
+        String[] unresolved = claims.stream()
+                .map(claim -> claim.record().getIdempotencyKey())
+                .filter(key -> !claimed.contains(key) && !recorded.containsKey(key))
+                .toArray(String[]::new);
+
+        if (unresolved.length > 0) {
+            jdbcTemplate.query(FIND_SQL,
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", unresolved)),
+                    (ResultSet rs) -> {
+                        recorded.put(rs.getString("idempotency_key"), mapRecord(rs));
+                    });
+        }
+
+        return recorded;
+    }
+
+    private PreparedStatement prepareInsert(Connection connection, List<TipClaim> claims, Set<String> probeKeys)
+            throws SQLException {
+        int size = claims.size();
+
+        String[] keys = new String[size];
+        Long[] ids = new Long[size];
+        String[] roomIds = new String[size];
+        String[] senderIds = new String[size];
+        String[] recipientIds = new String[size];
+        String[] amounts = new String[size];
+        String[] messages = new String[size];
+        String[] metadata = new String[size];
+        String[] tipCreatedAt = new String[size];
+        String[] fingerprints = new String[size];
+        byte[][] responseBodies = new byte[size][];
+        String[] createdAt = new String[size];
+        String[] expiresAt = new String[size];
+
+        for (int i = 0; i < size; i++) {
+            IdempotencyRecord record = claims.get(i).record();
+            Tip tip = claims.get(i).tip();
+            keys[i] = record.getIdempotencyKey();
+            ids[i] = tip.getId();
+            roomIds[i] = tip.getRoomId();
+            senderIds[i] = tip.getSenderId();
+            recipientIds[i] = tip.getRecipientId();
+            amounts[i] = tip.getAmount() == null ? null : tip.getAmount().toPlainString();
+            messages[i] = tip.getMessage();
+            metadata[i] = tip.getMetadata();
+            tipCreatedAt[i] = tip.getCreatedAt().toString();
+            fingerprints[i] = record.getRequestFingerprint();
+            responseBodies[i] = record.getResponseBody();
+            createdAt[i] = record.getCreatedAt().toString();
+            expiresAt[i] = record.getExpiresAt().toString();
+        }
+
+        PreparedStatement ps = connection.prepareStatement(INSERT_SQL);
+        ps.setArray(1, connection.createArrayOf("varchar", keys));
+        ps.setArray(2, connection.createArrayOf("bigint", ids));
+        ps.setArray(3, connection.createArrayOf("varchar", roomIds));
+        ps.setArray(4, connection.createArrayOf("varchar", senderIds));
+        ps.setArray(5, connection.createArrayOf("varchar", recipientIds));
+        ps.setArray(6, connection.createArrayOf("varchar", amounts));
+        ps.setArray(7, connection.createArrayOf("varchar", messages));
+        ps.setArray(8, connection.createArrayOf("varchar", metadata));
+        ps.setArray(9, connection.createArrayOf("varchar", tipCreatedAt));
+        ps.setArray(10, connection.createArrayOf("varchar", fingerprints));
+        ps.setArray(11, connection.createArrayOf("bytea", responseBodies));
+        ps.setArray(12, connection.createArrayOf("varchar", createdAt));
+        ps.setArray(13, connection.createArrayOf("varchar", expiresAt));
+        ps.setArray(14, connection.createArrayOf("varchar", probeKeys.toArray(String[]::new)));
+        return ps;
+    }
+
+    private IdempotencyRecord mapRecord(ResultSet rs) throws SQLException {
+        return IdempotencyRecord.builder()
+                .idempotencyKey(rs.getString("idempotency_key"))
+                .resourceId(rs.getLong("resource_id"))
+                .resourceType(rs.getString("resource_type"))
+                .requestFingerprint(rs.getString("request_fingerprint"))
+                .responseBody(rs.getBytes("response_body"))
+                .createdAt(rs.getObject("created_at", OffsetDateTime.class).toInstant())
+                .expiresAt(rs.getObject("expires_at", OffsetDateTime.class).toInstant())
+                .build();
+    }
+}
@@ -0,0 +1,26 @@
+package com.mchekin.tipcurrent.repository;
+
+import com.mchekin.tipcurrent.domain.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Locks the oldest pending events for dispatch. Events locked by another relay are skipped,
+     * so several nodes can drain the outbox without dispatching the same event twice. Their
+     * batches may commit in any order, so a room's events can be dispatched out of order.
+     */
+    @Query(value = """
+            SELECT * FROM outbox_events
+            ORDER BY id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<OutboxEvent> lockNextBatch(@Param("limit") int limit);
+}
@@ -0,0 +1,46 @@
+package com.mchekin.tipcurrent.repository;
+
+import com.mchekin.tipcurrent.dto.TipCursor;
+import com.mchekin.tipcurrent.dto.TipResponse;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface TipRepositoryCustom {
+
+    /**
+     * Returns up to {@code limit} tips matching the filter, newest first by {@code (createdAt, id)},
+     * starting right after {@code after}, or from the newest tip when it is {@code null}. The cursor
+     * becomes a range condition on the index rather than an OFFSET, so every page costs the same.
+     * Rows are read straight into responses without managed entities. The metadata column is only
+     * read when asked for; without it the listing indexes cover the query.
+     */
+    List<TipResponse> findPage(TipFilter filter, TipCursor after, int limit, boolean includeMetadata);
+
+    /**
+     * Passes every tip matching the filter to {@code consumer}, oldest first, reading them through a
+     * server-side cursor {@code fetchSize} rows at a time so memory use does not grow with the result.
+     * Must run inside a transaction, which is what keeps the cursor open.
+     */
+    void streamMatching(TipFilter filter, boolean includeMetadata, int fetchSize, Consumer<TipResponse> consumer);
+
+    long countMatching(TipFilter filter);
+
+    /**
+     * Returns the planner's row estimate for the filter, which costs no scan but can be off by
+     * a wide margin for rare values or stale statistics.
+     */
+    long estimateMatching(TipFilter filter);
+
+    /**
+     * Filters on the tip listing; null fields are not filtered on. {@code from} is inclusive and
+     * {@code to} exclusive.
+     */
+    record TipFilter(String roomId, String recipientId, String senderId, Instant from, Instant to) {
+
+        public TipFilter(String roomId, String recipientId, String senderId) {
+            this(roomId, recipientId, senderId, null, null);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.mchekin.tipcurrent.repository;
+
+import com.mchekin.tipcurrent.dto.TipCursor;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+@RequiredArgsConstructor
+class TipRepositoryCustomImpl implements TipRepositoryCustom {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JsonMapper jsonMapper;
+
+    @Override
+    public List<TipResponse> findPage(TipFilter filter, TipCursor after, int limit, boolean includeMetadata) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT id, room_id, sender_id, recipient_id, amount, message, created_at")
+                .append(includeMetadata ? ", metadata" : "")
+                .append(" FROM tips")
+                .append(where(filter, args));
+
+        if (after != null) {
+            // Equivalent to (created_at, id) < (?, ?), but the created_at bound stays usable by the
+            // indexes and for partition pruning
+            OffsetDateTime createdAt = after.createdAt().atOffset(ZoneOffset.UTC);
+            sql.append(args.isEmpty() ? " WHERE " : " AND ")
+                    .append("created_at <= ? AND (created_at < ? OR id < ?)");
+            args.add(createdAt);
+            args.add(createdAt);
+            args.add(after.id());
+        }
+
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT ?");
+        args.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> mapTip(rs, includeMetadata), args.toArray());
+    }
+
+    @Override
+    public void streamMatching(TipFilter filter, boolean includeMetadata, int fetchSize, Consumer<TipResponse> consumer) {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT id, room_id, sender_id, recipient_id, amount, message, created_at"
+                + (includeMetadata ? ", metadata" : "")
+                + " FROM tips"
+                + where(filter, args)
+                + " ORDER BY created_at, id";
+
+        jdbcTemplate.query(connection -> {
+            // pgjdbc only reads through a cursor with a fetch size, a forward-only result and autocommit off
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, (ResultSet rs) -> {
+            consumer.accept(mapTip(rs, includeMetadata));
+        });
+    }
+
+    @Override
+    public long countMatching(TipFilter filter) {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM tips" + where(filter, args);
+        Long count = jdbcTemplate.queryForObject(sql, Long.class, args.toArray());
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public long estimateMatching(TipFilter filter) {
+        List<Object> args = new ArrayList<>();
+        String sql = "EXPLAIN (FORMAT JSON) SELECT 1 FROM tips" + where(filter, args);
+        String plan = jdbcTemplate.queryForObject(sql, String.class, args.toArray());
+        return jsonMapper.readTree(plan).path(0).path("Plan").path("Plan Rows").asLong();
+    }
+
+    private String where(TipFilter filter, List<Object> args) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.roomId() != null) {
+            conditions.add("room_id = ?");
+            args.add(filter.roomId());
+        }
+        if (filter.recipientId() != null) {
+            conditions.add("recipient_id = ?");
+            args.add(filter.recipientId());
+        }
+        if (filter.senderId() != null) {
+            conditions.add("sender_id = ?");
+            args.add(filter.senderId());
+        }
+        if (filter.from() != null) {
+            conditions.add("created_at >= ?");
+            args.add(filter.from().atOffset(ZoneOffset.UTC));
+        }
+        if (filter.to() != null) {
+            conditions.add("created_at < ?");
+            args.add(filter.to().atOffset(ZoneOffset.UTC));
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private TipResponse mapTip(ResultSet rs, boolean includeMetadata) throws SQLException {
+        return TipResponse.builder()
+                .id(rs.getLong("id"))
+                .roomId(rs.getString("room_id"))
+                .senderId(rs.getString("sender_id"))
+                .recipientId(rs.getString("recipient_id"))
+                .amount(rs.getBigDecimal("amount"))
+                .message(rs.getString("message"))
+                .metadata(includeMetadata ? rs.getString("metadata") : null)
+                .createdAt(rs.getObject("created_at", OffsetDateTime.class).toInstant())
+                .build();
+    }
+}
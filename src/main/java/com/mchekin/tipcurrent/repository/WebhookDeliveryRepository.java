@@ -0,0 +1,33 @@
+package com.mchekin.tipcurrent.repository;
+
+import com.mchekin.tipcurrent.domain.WebhookDelivery;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface WebhookDeliveryRepository extends JpaRepository<WebhookDelivery, Long> {
+
+    /**
+     * Claims the oldest due deliveries and counts the attempt. A claimed delivery is not due again
+     * until the lease runs out, so a node that dies mid-delivery leaves it to be retried while the
+     * other nodes skip it in the meantime.
+     */
+    @Query(value = """
+            UPDATE webhook_deliveries
+            SET attempts = attempts + 1,
+                next_attempt_at = now() + make_interval(secs => :leaseSeconds)
+            WHERE id IN (
+                SELECT id FROM webhook_deliveries
+                WHERE next_attempt_at <= now()
+                ORDER BY id
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING *
+            """, nativeQuery = true)
+    List<WebhookDelivery> claimDue(@Param("limit") int limit, @Param("leaseSeconds") long leaseSeconds);
+}
@@ -4,6 +4,7 @@ import com.mchekin.tipcurrent.domain.Webhook;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -11,6 +12,8 @@ public interface WebhookRepository extends JpaRepository<Webhook, Long> {
 
     List<Webhook> findByRoomIdAndEventAndEnabledTrue(String roomId, String event);
 
+    List<Webhook> findByRoomIdInAndEventAndEnabledTrue(Collection<String> roomIds, String event);
+
     List<Webhook> findByRoomIdIsNullAndEventAndEnabledTrue(String event);
 
     List<Webhook> findByRoomId(String roomId);
@@ -1,27 +1,81 @@
 package com.mchekin.tipcurrent.scheduler;
 
+import com.mchekin.tipcurrent.config.SchedulingConfig;
 import com.mchekin.tipcurrent.repository.IdempotencyRecordRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.Instant;
 
+/**
+ * Expires idempotency records in bounded chunks, each in its own transaction, with a pause in
+ * between so the write path never competes with one long-running delete for locks and I/O.
+ */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class IdempotencyCleanupScheduler {
 
     private final IdempotencyRecordRepository idempotencyRepository;
+    private final int chunkSize;
+    private final long pauseMs;
+    private final int maxChunksPerRun;
+    private final Counter rowsRemoved;
+    private final Timer runTimer;
 
-    @Scheduled(cron = "0 0 * * * *")  // Every hour at minute 0
+    public IdempotencyCleanupScheduler(
+            IdempotencyRecordRepository idempotencyRepository,
+            MeterRegistry meterRegistry,
+            @Value("${tipcurrent.idempotency.cleanup.chunk-size:5000}") int chunkSize,
+            @Value("${tipcurrent.idempotency.cleanup.pause-ms:100}") long pauseMs,
+            @Value("${tipcurrent.idempotency.cleanup.max-chunks-per-run:2000}") int maxChunksPerRun) {
+        this.idempotencyRepository = idempotencyRepository;
+        this.chunkSize = chunkSize;
+        this.pauseMs = pauseMs;
+        this.maxChunksPerRun = maxChunksPerRun;
+        this.rowsRemoved = meterRegistry.counter("tipcurrent.idempotency.cleanup.rows");
+        this.runTimer = meterRegistry.timer("tipcurrent.idempotency.cleanup");
+    }
+
+    @Scheduled(cron = "0 0 * * * *", scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)  // Every hour at minute 0
     public void cleanupExpiredRecords() {
         Instant now = Instant.now();
         log.info("Starting cleanup of expired idempotency records older than {}", now);
 
-        idempotencyRepository.deleteByExpiresAtBefore(now);
+        long start = System.nanoTime();
+        long removed = 0;
+        int chunks = 0;
+        boolean drained = false;
+
+        try {
+            while (!drained && chunks < maxChunksPerRun) {
+                int deleted = idempotencyRepository.deleteExpiredChunk(now, chunkSize);
+                removed += deleted;
+                chunks++;
+
+                drained = deleted < chunkSize;
+                if (!drained) {
+                    Thread.sleep(pauseMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Idempotency cleanup interrupted after {} chunks", chunks);
+        } finally {
+            Duration duration = Duration.ofNanos(System.nanoTime() - start);
+            rowsRemoved.increment(removed);
+            runTimer.record(duration);
+            log.info("Completed cleanup of expired idempotency records: {} rows removed in {} chunks, took {} ms",
+                    removed, chunks, duration.toMillis());
+        }
 
-        log.info("Completed cleanup of expired idempotency records");
+        if (!drained && chunks >= maxChunksPerRun) {
+            log.warn("Idempotency cleanup stopped after {} chunks; the remainder is left for the next run", chunks);
+        }
     }
 }
@@ -1,5 +1,6 @@
 package com.mchekin.tipcurrent.scheduler;
 
+import com.mchekin.tipcurrent.config.SchedulingConfig;
 import com.mchekin.tipcurrent.service.StatsAggregationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -16,7 +17,7 @@ public class StatsAggregationScheduler {
 
     private final StatsAggregationService aggregationService;
 
-    @Scheduled(cron = "0 5 * * * *")
+    @Scheduled(cron = "0 5 * * * *", scheduler = SchedulingConfig.AGGREGATION_SCHEDULER)
     public void aggregateLastHour() {
         Instant now = Instant.now();
         Instant lastHourStart = now.minus(1, ChronoUnit.HOURS)
@@ -0,0 +1,33 @@
+package com.mchekin.tipcurrent.scheduler;
+
+import com.mchekin.tipcurrent.config.SchedulingConfig;
+import com.mchekin.tipcurrent.service.TipPartitionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TipPartitionScheduler {
+
+    private final TipPartitionService partitionService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintainPartitions();
+    }
+
+    @Scheduled(cron = "0 30 0 * * *", scheduler = SchedulingConfig.MAINTENANCE_SCHEDULER)  // Daily at 00:30
+    public void maintainPartitions() {
+        log.info("Starting tip partition maintenance");
+
+        int created = partitionService.createUpcomingPartitions();
+        int detached = partitionService.detachExpiredPartitions().size();
+
+        log.info("Completed tip partition maintenance: {} created, {} detached", created, detached);
+    }
+}
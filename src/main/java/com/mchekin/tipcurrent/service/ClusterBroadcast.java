@@ -0,0 +1,310 @@
+package com.mchekin.tipcurrent.service;
+
+import com.mchekin.tipcurrent.broadcast.RoomAudience;
+import com.mchekin.tipcurrent.domain.OutboxEvent;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Carries room events to the WebSocket subscribers of every node. The outbox relay broadcasts an
+ * event to its own node's subscribers and publishes it here; each other node re-broadcasts it to
+ * its subscribers. Events travel as Postgres notifications, one per room per relay batch, sent in
+ * the relay's transaction so they go out when it commits and in commit order. A notification too
+ * large for NOTIFY is stored in {@code cluster_events} and the notification carries its id.
+ * <p>
+ * Each node listens on a dedicated connection outside the pool. Notifications sent while a node
+ * is reconnecting are lost to it; its clients catch up by resubscribing with {@code last-seq}, and
+ * its recent-tips buffers, live room totals and leaderboards are dropped so they are seeded from the
+ * database again.
+ * <p>
+ * The tips carried by the events also reach the node's recent-tips buffers, live room totals and
+ * leaderboards: the relaying node adds them once the relay commits, as it skips its own
+ * notifications, and every other node on receipt. This is the only way tips reach the totals and
+ * leaderboards, so each node counts a relayed tip exactly once, whichever node created it. The
+ * relaying node adds them even when clustering is disabled. Tips go with the id of the transaction
+ * that relayed them, which tells the totals and leaderboards whether their seed already has them.
+ */
+@Service
+@Slf4j
+public class ClusterBroadcast {
+
+    // Postgres rejects NOTIFY payloads of 8000 bytes or more
+    private static final int MAX_NOTIFY_BYTES = 8000;
+    private static final int LISTEN_TIMEOUT_MS = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final JsonMapper jsonMapper;
+    private final RoomAudience roomAudience;
+    private final RecentTipsCache recentTipsCache;
+    private final LiveRoomStats liveRoomStats;
+    private final RoomLeaderboards roomLeaderboards;
+    private final boolean enabled;
+    private final String channel;
+    private final long reconnectDelayMs;
+    private final long largeEventRetentionSeconds;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Counter publishedInline;
+    private final Counter publishedByReference;
+    private final Timer latency;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public ClusterBroadcast(
+            JdbcTemplate jdbcTemplate,
+            SimpMessagingTemplate messagingTemplate,
+            JsonMapper jsonMapper,
+            RoomAudience roomAudience,
+            RecentTipsCache recentTipsCache,
+            LiveRoomStats liveRoomStats,
+            RoomLeaderboards roomLeaderboards,
+            MeterRegistry meterRegistry,
+            @Value("${tipcurrent.cluster.enabled:false}") boolean enabled,
+            @Value("${tipcurrent.cluster.channel:tipcurrent_rooms}") String channel,
+            @Value("${tipcurrent.cluster.reconnect-delay-ms:1000}") long reconnectDelayMs,
+            @Value("${tipcurrent.cluster.large-event-retention-seconds:60}") long largeEventRetentionSeconds,
+            @Value("${spring.datasource.url}") String url,
+            @Value("${spring.datasource.username}") String username,
+            @Value("${spring.datasource.password}") String password) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Cluster channel must be a lowercase identifier: " + channel);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.messagingTemplate = messagingTemplate;
+        this.jsonMapper = jsonMapper;
+        this.roomAudience = roomAudience;
+        this.recentTipsCache = recentTipsCache;
+        this.liveRoomStats = liveRoomStats;
+        this.roomLeaderboards = roomLeaderboards;
+        this.enabled = enabled;
+        this.channel = channel;
+        this.reconnectDelayMs = reconnectDelayMs;
+        this.largeEventRetentionSeconds = largeEventRetentionSeconds;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.publishedInline = meterRegistry.counter("tipcurrent.cluster.notifications", "payload", "inline");
+        this.publishedByReference = meterRegistry.counter("tipcurrent.cluster.notifications", "payload", "table");
+        this.latency = meterRegistry.timer("tipcurrent.cluster.delivery.latency");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        listenerThread = new Thread(this::runListener, "cluster-listener");
+        listenerThread.start();
+        log.info("Cluster broadcast started: node={}, channel={}", nodeId, channel);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (listenerThread == null) {
+            return;
+        }
+        running = false;
+        listenerThread.join(LISTEN_TIMEOUT_MS + reconnectDelayMs + 5000);
+    }
+
+    /**
+     * Publishes the events to the other nodes, folding the events of each room into one
+     * notification, and adds their tips to this node's recent-tips buffers, live room totals and
+     * leaderboards once the relay commits. Must run in the transaction that dispatched them.
+     */
+    public void publish(List<OutboxEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> byRoom = new LinkedHashMap<>();
+        for (OutboxEvent event : events) {
+            byRoom.computeIfAbsent(event.getRoomId(), roomId -> new ArrayList<>()).add(event.getPayload());
+        }
+        Long relayXid = jdbcTemplate.queryForObject("SELECT pg_current_xact_id()::text::bigint", Long.class);
+        // The relaying node skips its own notifications, and may not be where the tips were created
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                byRoom.forEach((roomId, payloads) -> {
+                    List<TipResponse> tips = tipsOf(roomId, payloads);
+                    recentTipsCache.addAll(tips);
+                    liveRoomStats.addAll(tips, relayXid);
+                    roomLeaderboards.addAll(tips, relayXid);
+                });
+            }
+        });
+        if (!enabled) {
+            return;
+        }
+        long sentAt = Instant.now().toEpochMilli();
+        byRoom.forEach((roomId, payloads) -> {
+            String notice = jsonMapper.writeValueAsString(new ClusterNotice(nodeId, roomId, sentAt, payloads, relayXid, null));
+            if (notice.getBytes(StandardCharsets.UTF_8).length < MAX_NOTIFY_BYTES) {
+                publishedInline.increment();
+            } else {
+                Long ref = jdbcTemplate.queryForObject(
+                        "INSERT INTO cluster_events (payload) VALUES (?) RETURNING id", Long.class, notice);
+                notice = jsonMapper.writeValueAsString(new ClusterNotice(nodeId, roomId, sentAt, null, relayXid, ref));
+                publishedByReference.increment();
+            }
+            jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, channel, notice);
+        });
+    }
+
+    /**
+     * Deletes stored events every node has had time to read.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void pruneLargeEvents() {
+        if (!enabled) {
+            return;
+        }
+        jdbcTemplate.update("DELETE FROM cluster_events WHERE created_at < now() - make_interval(secs => ?)",
+                largeEventRetentionSeconds);
+    }
+
+    private void runListener() {
+        boolean reconnecting = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                if (reconnecting) {
+                    // Tips relayed by other nodes while disconnected never reached the buffers, totals or leaderboards
+                    recentTipsCache.clear();
+                    liveRoomStats.clear();
+                    roomLeaderboards.clear();
+                    reconnecting = false;
+                }
+                PGConnection listener = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = listener.getNotifications(LISTEN_TIMEOUT_MS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            try {
+                                receive(notification.getParameter());
+                            } catch (RuntimeException e) {
+                                log.warn("Failed to re-broadcast cluster notification", e);
+                            }
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                reconnecting = true;
+                log.warn("Cluster listener lost its connection, reconnecting in {} ms", reconnectDelayMs, e);
+                sleep(reconnectDelayMs);
+            }
+        }
+    }
+
+    private void receive(String payload) {
+        ClusterNotice notice = jsonMapper.readValue(payload, ClusterNotice.class);
+        if (nodeId.equals(notice.node())) {
+            // The relay already broadcast these to this node's subscribers
+            return;
+        }
+        if (notice.ref() != null) {
+            try {
+                notice = jsonMapper.readValue(jdbcTemplate.queryForObject(
+                        "SELECT payload FROM cluster_events WHERE id = ?", String.class, notice.ref()), ClusterNotice.class);
+            } catch (EmptyResultDataAccessException e) {
+                log.warn("Cluster event {} for room {} was pruned before it was read", notice.ref(), notice.roomId());
+                return;
+            }
+        }
+        // Taken in whether or not anyone here watches the room, so every node's state stays complete
+        List<TipResponse> tips = tipsOf(notice.roomId(), notice.events());
+        recentTipsCache.addAll(tips);
+        liveRoomStats.addAll(tips, notice.relayXid());
+        roomLeaderboards.addAll(tips, notice.relayXid());
+        if (roomAudience.canSkip(notice.roomId())) {
+            return;
+        }
+        for (String event : notice.events()) {
+            messagingTemplate.send("/topic/rooms/" + notice.roomId(),
+                    OutboxRelay.jsonMessage(event.getBytes(StandardCharsets.UTF_8)));
+        }
+        latency.record(Duration.ofMillis(Math.max(0, Instant.now().toEpochMilli() - notice.sentAt())));
+    }
+
+    private List<TipResponse> tipsOf(String roomId, List<String> events) {
+        List<TipResponse> tips = new ArrayList<>();
+        for (String event : events) {
+            tips.addAll(tipsOf(roomId, event));
+        }
+        return tips;
+    }
+
+    /**
+     * Returns the tips a {@code tip.created} event carries: a single tip or a room batch.
+     */
+    private List<TipResponse> tipsOf(String roomId, String event) {
+        try {
+            JsonNode node = jsonMapper.readTree(event);
+            if (node.has("tips")) {
+                List<TipResponse> tips = new ArrayList<>();
+                for (JsonNode tip : node.get("tips")) {
+                    tips.add(jsonMapper.treeToValue(tip, TipResponse.class));
+                }
+                return tips;
+            }
+            return node.has("amount") ? List.of(jsonMapper.treeToValue(node, TipResponse.class)) : List.of();
+        } catch (JacksonException e) {
+            log.warn("Cluster event of room {} carries no readable tips", roomId, e);
+            return List.of();
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    /**
+     * The events of one room from one relay batch, or a reference to them in {@code cluster_events},
+     * and the id of the relay transaction.
+     */
+    record ClusterNotice(String node, String roomId, long sentAt, List<String> events, Long relayXid, Long ref) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.mchekin.tipcurrent.service;
+
+/**
+ * Thrown when a tip's group commit batch does not commit within the commit timeout. The batch may
+ * still commit afterwards, so the tip may or may not have been persisted.
+ */
+public class GroupCommitTimeoutException extends RuntimeException {
+
+    public GroupCommitTimeoutException(long commitTimeoutMs, Throwable cause) {
+        super("Timed out after " + commitTimeoutMs + " ms waiting for group commit", cause);
+    }
+}
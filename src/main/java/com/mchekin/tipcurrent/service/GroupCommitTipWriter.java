@@ -0,0 +1,175 @@
+package com.mchekin.tipcurrent.service;
+
+import com.mchekin.tipcurrent.service.TipBatchService.TipWrite;
+import com.mchekin.tipcurrent.service.TipBatchService.TipWriteResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Write-behind ingestion for tips. Accepted tips are queued and a single writer thread
+ * persists them in batches, one transaction per batch. Callers block until the batch
+ * holding their tip has committed, so a returned tip is always durable. Idempotency keys
+ * are claimed inside the batch transaction, exactly as for a direct write.
+ */
+@Service
+@Slf4j
+public class GroupCommitTipWriter {
+
+    private final TipBatchService tipBatchService;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long lingerMs;
+    private final long commitTimeoutMs;
+    private final BlockingQueue<PendingTip> queue;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public GroupCommitTipWriter(
+            TipBatchService tipBatchService,
+            @Value("${tipcurrent.ingestion.group-commit.enabled:false}") boolean enabled,
+            @Value("${tipcurrent.ingestion.group-commit.queue-capacity:10000}") int queueCapacity,
+            @Value("${tipcurrent.ingestion.group-commit.max-batch-size:200}") int maxBatchSize,
+            @Value("${tipcurrent.ingestion.group-commit.linger-ms:0}") long lingerMs,
+            @Value("${tipcurrent.ingestion.group-commit.commit-timeout-ms:5000}") long commitTimeoutMs) {
+        this.tipBatchService = tipBatchService;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMs = lingerMs;
+        this.commitTimeoutMs = commitTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::runWriter, "tip-group-commit");
+        writerThread.start();
+        log.info("Group commit ingestion enabled: queueCapacity={}, maxBatchSize={}, lingerMs={}",
+                queue.remainingCapacity(), maxBatchSize, lingerMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        // The writer drains whatever is still queued before exiting
+        running = false;
+        writerThread.join(commitTimeoutMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the tip for the next batch and waits until that batch has committed.
+     *
+     * @throws RejectedExecutionException if the ingestion queue is full
+     * @throws GroupCommitTimeoutException if the batch has not committed within the commit timeout
+     */
+    public TipWriteResult write(TipWrite write) {
+        PendingTip pending = new PendingTip(write, new CompletableFuture<>());
+
+        if (!running || !queue.offer(pending)) {
+            throw new RejectedExecutionException("Tip ingestion queue is full");
+        }
+
+        try {
+            return pending.result().get(commitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Group commit failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new GroupCommitTimeoutException(commitTimeoutMs, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for group commit", e);
+        }
+    }
+
+    private void runWriter() {
+        List<PendingTip> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingTip first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void fillBatch(List<PendingTip> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                return;
+            }
+
+            PendingTip next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingTip> batch) {
+        List<TipWrite> writes = batch.stream().map(PendingTip::write).toList();
+
+        try {
+            List<TipWriteResult> results = tipBatchService.createTips(writes);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results.get(i));
+            }
+            log.debug("Group committed {} tips", batch.size());
+        } catch (RuntimeException e) {
+            // One bad tip must not fail its neighbours: fall back to a commit per tip
+            log.warn("Group commit of {} tips failed, retrying individually", batch.size(), e);
+            for (PendingTip pending : batch) {
+                try {
+                    pending.write().tip().setId(null);
+                    pending.result().complete(tipBatchService.createTips(List.of(pending.write())).getFirst());
+                } catch (RuntimeException ex) {
+                    pending.result().completeExceptionally(ex);
+                }
+            }
+        }
+    }
+
+    private record PendingTip(TipWrite write, CompletableFuture<TipWriteResult> result) {
+    }
+}
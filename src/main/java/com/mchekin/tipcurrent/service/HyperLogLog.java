@@ -0,0 +1,74 @@
+package com.mchekin.tipcurrent.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Estimates how many distinct keys were added in a fixed 2 KiB, however many there are. The
+ * standard error is about 2.3%; small counts, up to a few hundred, are close to exact. Safe for
+ * concurrent use without locking: registers only grow, each by compare-and-set, and an estimate
+ * taken meanwhile reads some of a concurrent key's update or none of it.
+ */
+class HyperLogLog {
+
+    private static final int PRECISION = 11;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    // One byte per register, eight to a word
+    private final AtomicLongArray registers = new AtomicLongArray(REGISTERS / Long.BYTES);
+
+    void add(String key) {
+        long hash = hash(key);
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        // Position of the first set bit after the index bits; the marker bit caps it
+        long rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        int word = index / Long.BYTES;
+        int shift = (index % Long.BYTES) * Byte.SIZE;
+        long current = registers.get(word);
+        while (rank > ((current >>> shift) & 0xff)) {
+            long updated = (current & ~(0xffL << shift)) | (rank << shift);
+            long witness = registers.compareAndExchange(word, current, updated);
+            if (witness == current) {
+                return;
+            }
+            current = witness;
+        }
+    }
+
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (int word = 0; word < registers.length(); word++) {
+            long registerWord = registers.get(word);
+            for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+                int register = (int) ((registerWord >>> shift) & 0xff);
+                sum += 1.0 / (1L << register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // Linear counting is more accurate while many registers are still empty
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    // 64-bit FNV-1a finished with the MurmurHash3 mixer, as in RollingBloomFilter
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,123 @@
+package com.mchekin.tipcurrent.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mchekin.tipcurrent.domain.IdempotencyRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * In-process front for idempotency records. Recently used keys are cached with their record,
+ * including the serialized response, so a replay is answered without touching the database.
+ * A rolling Bloom filter remembers every key this node has recorded, so a key it has never
+ * seen can skip the lookup of an existing record. Neither is authoritative: the database
+ * claim still decides every miss.
+ */
+@Service
+public class IdempotencyCache {
+
+    private final boolean enabled;
+    private final Cache<String, IdempotencyRecord> recentKeys;
+    private final RollingBloomFilter seenKeys;
+
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Counter bloomNew;
+    private final Counter bloomMaybeSeen;
+    private final Counter bloomFalsePositives;
+
+    public IdempotencyCache(
+            MeterRegistry meterRegistry,
+            @Value("${tipcurrent.idempotency.cache.enabled:true}") boolean enabled,
+            @Value("${tipcurrent.idempotency.cache.max-size:100000}") long maxSize,
+            @Value("${tipcurrent.idempotency.cache.ttl-seconds:600}") long ttlSeconds,
+            @Value("${tipcurrent.idempotency.bloom.expected-insertions:1000000}") int expectedInsertions,
+            @Value("${tipcurrent.idempotency.bloom.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${tipcurrent.idempotency.bloom.rotation-hours:24}") long rotationHours) {
+        this.enabled = enabled;
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        this.seenKeys = new RollingBloomFilter(expectedInsertions, falsePositiveRate, Duration.ofHours(rotationHours));
+
+        this.cacheHits = meterRegistry.counter("tipcurrent.idempotency.cache", "result", "hit");
+        this.cacheMisses = meterRegistry.counter("tipcurrent.idempotency.cache", "result", "miss");
+        this.bloomNew = meterRegistry.counter("tipcurrent.idempotency.bloom", "result", "new");
+        this.bloomMaybeSeen = meterRegistry.counter("tipcurrent.idempotency.bloom", "result", "maybe_seen");
+        this.bloomFalsePositives = meterRegistry.counter("tipcurrent.idempotency.bloom", "result", "false_positive");
+        Gauge.builder("tipcurrent.idempotency.cache.size", recentKeys, Cache::estimatedSize)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the record for the key, or {@code null} if the key is not cached.
+     */
+    public IdempotencyRecord getIfPresent(String key) {
+        if (!enabled) {
+            return null;
+        }
+        IdempotencyRecord record = recentKeys.getIfPresent(key);
+        (record != null ? cacheHits : cacheMisses).increment();
+        return record;
+    }
+
+    /**
+     * Returns {@code false} when this node has definitely never recorded the key.
+     */
+    public boolean mightBeRecorded(String key) {
+        if (!enabled) {
+            return true;
+        }
+        boolean maybe = seenKeys.mightContain(key);
+        (maybe ? bloomMaybeSeen : bloomNew).increment();
+        return maybe;
+    }
+
+    /**
+     * Counts a key the Bloom filter reported as possibly seen that turned out to be new.
+     */
+    public void recordFalsePositive() {
+        bloomFalsePositives.increment();
+    }
+
+    /**
+     * Remembers resolved keys once the surrounding transaction commits, so a rolled back
+     * claim is never replayed from memory.
+     */
+    public void putAllAfterCommit(Map<String, IdempotencyRecord> recordsByKey) {
+        if (!enabled || recordsByKey.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            putAll(recordsByKey);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                putAll(recordsByKey);
+            }
+        });
+    }
+
+    public void clear() {
+        recentKeys.invalidateAll();
+        seenKeys.clear();
+    }
+
+    private void putAll(Map<String, IdempotencyRecord> recordsByKey) {
+        recordsByKey.forEach((key, record) -> {
+            recentKeys.put(key, record);
+            seenKeys.put(key);
+        });
+    }
+}
@@ -0,0 +1,11 @@
+package com.mchekin.tipcurrent.service;
+
+/**
+ * Thrown when an idempotency key is replayed with a request that differs from the one it recorded.
+ */
+public class IdempotencyKeyMismatchException extends RuntimeException {
+
+    public IdempotencyKeyMismatchException(String idempotencyKey) {
+        super("Idempotency key was already used for a different request: " + idempotencyKey);
+    }
+}
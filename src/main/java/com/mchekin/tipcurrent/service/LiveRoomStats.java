@@ -0,0 +1,349 @@
+package com.mchekin.tipcurrent.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mchekin.tipcurrent.broadcast.RoomAudience;
+import com.mchekin.tipcurrent.dto.RoomLiveStats;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running tip count, total and unique senders of every active room, kept in memory and pushed to
+ * {@code /topic/rooms/{id}/stats} so overlays can show them live. A room's totals are seeded from
+ * the tips table when first read and then follow the tips relayed by any node, which reach them
+ * through {@link ClusterBroadcast} exactly once per node; the {@link RelaySnapshot} the seed was read
+ * in tells which relayed tips it already counted. Rooms that go unread and get no tips for the idle
+ * period are evicted, and the number of rooms is capped; unique senders are estimated with a
+ * {@link HyperLogLog}, so a room costs the same however many senders it has. Updates only bump
+ * counters, without locking; a room's stats are pushed at most once per publish interval, however
+ * many tips it gets.
+ */
+@Service
+@Slf4j
+public class LiveRoomStats {
+
+    private static final String ROOM_PREFIX = "/topic/rooms/";
+    private static final String STATS_SUFFIX = "/stats";
+    private static final int AMOUNT_SCALE = 2;
+
+    // Totals per sender of the tips already relayed, read in one snapshot with the snapshot itself;
+    // an empty room still yields the snapshot. Binds the room id three times.
+    private static final String SEED_SQL = """
+            WITH unrelayed AS (
+            """ + RelaySnapshot.UNRELAYED_TIP_IDS_SQL + """
+            ), senders AS (
+                SELECT sender_id, count(*) AS tips, sum(amount) AS amount
+                FROM tips
+                WHERE room_id = ? AND id NOT IN (SELECT id FROM unrelayed)
+                GROUP BY sender_id
+            )
+            SELECT pg_current_snapshot()::text AS snapshot, sender_id, tips, amount
+            FROM (VALUES (1)) AS one LEFT JOIN senders ON true
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final RoomAudience roomAudience;
+    private final JsonMapper jsonMapper;
+    private final boolean enabled;
+    private final Counter published;
+    private final Cache<String, RoomTotals> rooms;
+    // Seeds rooms for the publisher, whose scheduler is kept for short jobs
+    private final ExecutorService seeder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stats-seed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Rooms whose stats changed since they were last pushed
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // Rooms whose stats topic was subscribed to since the last push
+    private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+
+    public LiveRoomStats(
+            JdbcTemplate jdbcTemplate,
+            SimpMessagingTemplate messagingTemplate,
+            RoomAudience roomAudience,
+            JsonMapper jsonMapper,
+            MeterRegistry meterRegistry,
+            @Value("${tipcurrent.stats.live.enabled:true}") boolean enabled,
+            @Value("${tipcurrent.stats.live.max-rooms:10000}") long maxRooms,
+            @Value("${tipcurrent.stats.live.idle-seconds:300}") long idleSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.messagingTemplate = messagingTemplate;
+        this.roomAudience = roomAudience;
+        this.jsonMapper = jsonMapper;
+        this.enabled = enabled;
+        this.published = meterRegistry.counter("tipcurrent.stats.live.published");
+        this.rooms = Caffeine.newBuilder()
+                .maximumSize(maxRooms)
+                .expireAfterAccess(Duration.ofSeconds(idleSeconds))
+                .build();
+        Gauge.builder("tipcurrent.stats.live.rooms", rooms, Cache::estimatedSize)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        seeder.shutdownNow();
+    }
+
+    /**
+     * Drops every room's totals, so each is seeded from the database again on its next read.
+     */
+    public void clear() {
+        rooms.invalidateAll();
+    }
+
+    /**
+     * Counts tips that have committed and been relayed, by this node or another, in the relay
+     * transaction given; tips relayed without one are always counted. Rooms without totals are only
+     * marked as changed; they are seeded, tips included, when next read.
+     */
+    public void addAll(List<TipResponse> tips, Long relayXid) {
+        if (!enabled) {
+            return;
+        }
+        for (TipResponse tip : tips) {
+            RoomTotals totals = rooms.getIfPresent(tip.getRoomId());
+            if (totals != null) {
+                totals.add(tip, relayXid);
+            }
+            dirty.add(tip.getRoomId());
+        }
+    }
+
+    public RoomLiveStats get(String roomId) {
+        if (!enabled) {
+            return RoomLiveStats.builder().roomId(roomId).totalAmount(BigDecimal.ZERO.setScale(AMOUNT_SCALE)).build();
+        }
+        RoomTotals totals = rooms.get(roomId, key -> new RoomTotals());
+        if (!totals.isLoaded()) {
+            // Seeded here unless already under way, in which case this waits for it
+            try {
+                seed(roomId, totals, Runnable::run).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return totals.snapshot(roomId);
+    }
+
+    /**
+     * Sends a new subscriber of a stats topic the current totals with the next push, rather than
+     * leaving it waiting for the room's next tip.
+     */
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        String destination = SimpMessageHeaderAccessor.getDestination(event.getMessage().getHeaders());
+        if (enabled && destination != null && destination.startsWith(ROOM_PREFIX) && destination.endsWith(STATS_SUFFIX)) {
+            String roomId = destination.substring(ROOM_PREFIX.length(), destination.length() - STATS_SUFFIX.length());
+            if (!roomId.isEmpty() && roomId.indexOf('/') < 0) {
+                subscribed.add(roomId);
+            }
+        }
+    }
+
+    /**
+     * Pushes the stats of every room that changed, or gained a subscriber, since the last run to its
+     * subscribers on this node. A room not seeded yet is seeded in the background and pushed on a
+     * later run.
+     */
+    @Scheduled(fixedDelayString = "${tipcurrent.stats.live.publish-interval-ms:1000}")
+    public void publish() {
+        List<String> unseeded = new ArrayList<>();
+        for (Iterator<String> it = subscribed.iterator(); it.hasNext(); ) {
+            String roomId = it.next();
+            it.remove();
+            dirty.remove(roomId);
+            // Sent even if the broker has yet to register the subscription that was announced
+            if (!send(roomId)) {
+                unseeded.add(roomId);
+            }
+        }
+        subscribed.addAll(unseeded);
+        unseeded.clear();
+        for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+            String roomId = it.next();
+            it.remove();
+            if (roomAudience.hasSubscribers(ROOM_PREFIX + roomId + STATS_SUFFIX) && !send(roomId)) {
+                unseeded.add(roomId);
+            }
+        }
+        dirty.addAll(unseeded);
+    }
+
+    // Returns false, and starts seeding the room, when it has no totals to send yet
+    private boolean send(String roomId) {
+        RoomTotals totals = rooms.get(roomId, key -> new RoomTotals());
+        if (!totals.isLoaded()) {
+            seed(roomId, totals, seeder).exceptionally(e -> {
+                log.warn("Failed to seed the live totals of room {}, retrying with the next push", roomId, e);
+                return null;
+            });
+            return false;
+        }
+        messagingTemplate.send(ROOM_PREFIX + roomId + STATS_SUFFIX,
+                OutboxRelay.jsonMessage(jsonMapper.writeValueAsBytes(totals.snapshot(roomId))));
+        published.increment();
+        return true;
+    }
+
+    /**
+     * Seeds the room on the executor given, or returns the seeding already under way. A room that
+     * fails to seed is dropped, to be seeded afresh on its next read.
+     */
+    private CompletableFuture<Void> seed(String roomId, RoomTotals totals, Executor executor) {
+        CompletableFuture<Void> seeding = new CompletableFuture<>();
+        CompletableFuture<Void> underway = totals.seeding.compareAndExchange(null, seeding);
+        if (underway != null) {
+            return underway;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    totals.load(read(roomId));
+                    seeding.complete(null);
+                } catch (RuntimeException e) {
+                    rooms.asMap().remove(roomId, totals);
+                    seeding.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            rooms.asMap().remove(roomId, totals);
+            seeding.completeExceptionally(e);
+        }
+        return seeding;
+    }
+
+    private Seed read(String roomId) {
+        Seed seed = new Seed();
+        jdbcTemplate.query(SEED_SQL, row -> {
+            seed.snapshot = RelaySnapshot.parse(row.getString("snapshot"));
+            String senderId = row.getString("sender_id");
+            if (senderId != null) {
+                seed.tips += row.getLong("tips");
+                seed.cents += toCents(row.getBigDecimal("amount"));
+                seed.senderIds.add(senderId);
+            }
+        }, roomId, roomId, roomId);
+        return seed;
+    }
+
+    /**
+     * A room's totals as read from the tips table, leaving out the tips still in the outbox, and
+     * the snapshot they were read in.
+     */
+    private static final class Seed {
+
+        private final List<String> senderIds = new ArrayList<>();
+        private RelaySnapshot snapshot;
+        private long tips;
+        private long cents;
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(AMOUNT_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private record Relayed(TipResponse tip, Long relayXid) {
+    }
+
+    /**
+     * A room's counters, updated without locking. Amounts are kept in cents, as stored in the tips
+     * table. Until the room is seeded, relayed tips are queued; after that, tips whose relay the
+     * seed's snapshot saw are skipped, as the seed counted them. A read while tips are being counted
+     * may see a tip in one counter and not yet in another.
+     */
+    private static final class RoomTotals {
+
+        private final LongAdder tips = new LongAdder();
+        private final LongAdder cents = new LongAdder();
+        private final HyperLogLog senders = new HyperLogLog();
+        private final Queue<Relayed> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicReference<CompletableFuture<Void>> seeding = new AtomicReference<>();
+        // Set once the seed is counted
+        private volatile RelaySnapshot snapshot;
+
+        boolean isLoaded() {
+            return snapshot != null;
+        }
+
+        void load(Seed seed) {
+            tips.add(seed.tips);
+            cents.add(seed.cents);
+            seed.senderIds.forEach(senders::add);
+            snapshot = seed.snapshot;
+            drain(seed.snapshot);
+        }
+
+        void add(TipResponse tip, Long relayXid) {
+            RelaySnapshot seeded = snapshot;
+            if (seeded == null) {
+                pending.add(new Relayed(tip, relayXid));
+                // The seed may have been loaded meanwhile, and drained the queue before this tip joined it
+                seeded = snapshot;
+                if (seeded != null) {
+                    drain(seeded);
+                }
+                return;
+            }
+            count(tip, relayXid, seeded);
+        }
+
+        RoomLiveStats snapshot(String roomId) {
+            return RoomLiveStats.builder()
+                    .roomId(roomId)
+                    .totalTips(tips.sum())
+                    .totalAmount(BigDecimal.valueOf(cents.sum(), AMOUNT_SCALE))
+                    .uniqueSenders(senders.estimate())
+                    .build();
+        }
+
+        private void drain(RelaySnapshot seeded) {
+            for (Relayed relayed = pending.poll(); relayed != null; relayed = pending.poll()) {
+                count(relayed.tip(), relayed.relayXid(), seeded);
+            }
+        }
+
+        private void count(TipResponse tip, Long relayXid, RelaySnapshot seeded) {
+            if (seeded.includes(relayXid)) {
+                return;
+            }
+            tips.increment();
+            cents.add(toCents(tip.getAmount()));
+            senders.add(tip.getSenderId());
+        }
+    }
+}
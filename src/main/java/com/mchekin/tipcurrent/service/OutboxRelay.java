@@ -0,0 +1,175 @@
+package com.mchekin.tipcurrent.service;
+
+import com.mchekin.tipcurrent.broadcast.RoomAudience;
+import com.mchekin.tipcurrent.domain.OutboxEvent;
+import com.mchekin.tipcurrent.dto.EncodedEvent;
+import com.mchekin.tipcurrent.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the outbox and dispatches each event to WebSocket subscribers, through
+ * {@link ClusterBroadcast} to the WebSocket subscribers of the other nodes, and to the webhook
+ * delivery queue of {@link WebhookService}. A relay thread wakes up as soon as a transaction that
+ * wrote events commits, and polls in any case so events left behind by a crash or another node are
+ * still delivered. An event is deleted in the same transaction that dispatched it and queued its
+ * webhook deliveries, so a failed dispatch is retried: delivery is at least once.
+ * <p>
+ * With several nodes relaying, each locks its own batch and skips the events another holds, so
+ * their batches commit in any order. The events of one room are then dispatched in order within a
+ * batch but not necessarily across batches; WebSocket clients order them by {@code seq}.
+ */
+@Service
+@Slf4j
+public class OutboxRelay {
+
+    private final OutboxEventRepository outboxRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final WebhookService webhookService;
+    private final ClusterBroadcast clusterBroadcast;
+    private final RoomAudience roomAudience;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final Timer lag;
+    private final Semaphore wakeUps = new Semaphore(0);
+
+    private volatile boolean running;
+    private Thread relayThread;
+
+    public OutboxRelay(
+            OutboxEventRepository outboxRepository,
+            SimpMessagingTemplate messagingTemplate,
+            WebhookService webhookService,
+            ClusterBroadcast clusterBroadcast,
+            RoomAudience roomAudience,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${tipcurrent.outbox.relay.enabled:true}") boolean enabled,
+            @Value("${tipcurrent.outbox.relay.batch-size:500}") int batchSize,
+            @Value("${tipcurrent.outbox.relay.poll-interval-ms:1000}") long pollIntervalMs) {
+        this.outboxRepository = outboxRepository;
+        this.messagingTemplate = messagingTemplate;
+        this.webhookService = webhookService;
+        this.clusterBroadcast = clusterBroadcast;
+        this.roomAudience = roomAudience;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.lag = meterRegistry.timer("tipcurrent.outbox.relay.lag");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        relayThread = new Thread(this::runRelay, "outbox-relay");
+        relayThread.start();
+        log.info("Outbox relay started: batchSize={}, pollIntervalMs={}", batchSize, pollIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (relayThread == null) {
+            return;
+        }
+        // Undispatched events stay in the outbox for the next start
+        running = false;
+        wakeUps.release();
+        relayThread.join(pollIntervalMs + 5000);
+    }
+
+    /**
+     * Wakes the relay once the surrounding transaction commits, so new events are dispatched
+     * without waiting for the next poll.
+     */
+    public void wakeUpAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            wakeUps.release();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeUps.release();
+            }
+        });
+    }
+
+    /**
+     * Dispatches and deletes the oldest pending events, at most one batch, in one transaction.
+     *
+     * @return the number of events dispatched
+     */
+    public int relayBatch() {
+        Integer relayed = transactionTemplate.execute(status -> {
+            List<OutboxEvent> events = outboxRepository.lockNextBatch(batchSize);
+            events.forEach(this::dispatch);
+            webhookService.enqueue(events);
+            clusterBroadcast.publish(events);
+            outboxRepository.deleteAllInBatch(events);
+            return events.size();
+        });
+        return relayed == null ? 0 : relayed;
+    }
+
+    private void runRelay() {
+        while (running) {
+            try {
+                wakeUps.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                wakeUps.drainPermits();
+                while (running && relayBatch() == batchSize) {
+                    // A full batch means more events are probably waiting
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                // The batch rolled back and stays in the outbox; the next poll retries it
+                log.warn("Outbox relay failed, retrying within {} ms", pollIntervalMs, e);
+            }
+        }
+    }
+
+    private void dispatch(OutboxEvent event) {
+        // The payload was serialized when the event was written; every consumer gets those bytes as they are
+        EncodedEvent encoded = EncodedEvent.of(event.getEvent(), event.getPayload());
+
+        if (!roomAudience.canSkip(event.getRoomId())) {
+            messagingTemplate.send("/topic/rooms/" + event.getRoomId(), jsonMessage(encoded.json()));
+        }
+
+        lag.record(Duration.between(event.getCreatedAt(), Instant.now()));
+    }
+
+    static Message<byte[]> jsonMessage(byte[] json) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create();
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.setLeaveMutable(true);
+        return MessageBuilder.createMessage(json, headers.getMessageHeaders());
+    }
+}
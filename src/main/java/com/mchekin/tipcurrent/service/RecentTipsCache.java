@@ -0,0 +1,222 @@
+package com.mchekin.tipcurrent.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mchekin.tipcurrent.dto.TipCursor;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.repository.TipRepositoryCustom.TipFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Most recent tips of each active room, kept in memory so the first page of a room feed is served
+ * without a query. A room's buffer is seeded from the database on its first read and then follows
+ * the tips this node commits for the room, plus those relayed by any node, which reach it through
+ * {@link ClusterBroadcast}. Rooms that go unread for the idle period are evicted, and the number of
+ * rooms is capped, so memory stays bounded at roughly max rooms times capacity tips.
+ */
+@Service
+public class RecentTipsCache {
+
+    // Newest first, matching the listing order
+    private static final Comparator<TipResponse> NEWEST_FIRST = Comparator
+            .comparing(TipResponse::getCreatedAt)
+            .thenComparing(TipResponse::getId)
+            .reversed();
+
+    private final TipRepository tipRepository;
+    private final TransactionTemplate primaryRead;
+    private final boolean enabled;
+    private final int capacity;
+    private final Cache<String, RoomBuffer> rooms;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public RecentTipsCache(
+            TipRepository tipRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${tipcurrent.feed.recent-tips.enabled:true}") boolean enabled,
+            @Value("${tipcurrent.feed.recent-tips.capacity:50}") int capacity,
+            @Value("${tipcurrent.feed.recent-tips.max-rooms:10000}") long maxRooms,
+            @Value("${tipcurrent.feed.recent-tips.idle-seconds:300}") long idleSeconds) {
+        this.tipRepository = tipRepository;
+        this.primaryRead = new TransactionTemplate(transactionManager);
+        this.primaryRead.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.rooms = Caffeine.newBuilder()
+                .maximumSize(maxRooms)
+                .expireAfterAccess(Duration.ofSeconds(idleSeconds))
+                .build();
+
+        this.hits = meterRegistry.counter("tipcurrent.feed.recent-tips", "result", "hit");
+        this.misses = meterRegistry.counter("tipcurrent.feed.recent-tips", "result", "miss");
+        Gauge.builder("tipcurrent.feed.recent-tips.rooms", rooms, Cache::estimatedSize)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the newest {@code size} tips of the room, or {@code null} when the buffer cannot tell
+     * the page apart from the database's and the caller has to query it.
+     */
+    public Page firstPage(String roomId, int size, boolean includeMetadata) {
+        if (!enabled || size >= capacity) {
+            return null;
+        }
+
+        RoomBuffer buffer = rooms.get(roomId, key -> new RoomBuffer());
+        if (!buffer.isLoaded()) {
+            // Loaded outside the buffer's lock; tips committed meanwhile are added as usual and deduplicated.
+            // Read from the primary: a lagging replica would leave tips out that no later commit brings back.
+            buffer.load(primaryRead.execute(status ->
+                    tipRepository.findPage(new TipFilter(roomId, null, null), null, capacity, true)));
+        }
+
+        Page page = buffer.page(size);
+        (page != null ? hits : misses).increment();
+        if (page == null || includeMetadata) {
+            return page;
+        }
+        return new Page(page.tips().stream().map(tip -> tip.toBuilder().metadata(null).build()).toList(), page.next());
+    }
+
+    /**
+     * Adds created tips to the buffers of their rooms once the surrounding transaction commits.
+     * Rooms without a buffer are left alone; they are seeded from the database when first read.
+     */
+    public void addAllAfterCommit(List<TipResponse> tips) {
+        if (!enabled || tips.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            addAll(tips);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                addAll(tips);
+            }
+        });
+    }
+
+    /**
+     * Drops every buffer, so each room is seeded from the database again on its next read.
+     */
+    public void clear() {
+        rooms.invalidateAll();
+    }
+
+    /**
+     * Adds tips that have already committed, such as those relayed by this or another node, to the
+     * buffers of their rooms. Tips a buffer already holds are skipped.
+     */
+    public void addAll(List<TipResponse> tips) {
+        if (!enabled) {
+            return;
+        }
+        for (TipResponse tip : tips) {
+            RoomBuffer buffer = rooms.getIfPresent(tip.getRoomId());
+            if (buffer != null) {
+                buffer.add(tip);
+            }
+        }
+    }
+
+    public record Page(List<TipResponse> tips, String next) {
+    }
+
+    /**
+     * Ring buffer of a room's newest tips. Tips normally arrive newest first and go in at the head,
+     * evicting the oldest; one that commits out of order is inserted at its place in the order.
+     */
+    private final class RoomBuffer {
+
+        private final ArrayDeque<TipResponse> tips = new ArrayDeque<>(capacity);
+        private boolean loaded;
+        // Whether the room had fewer tips than the capacity when loaded, and none were dropped since:
+        // a buffer that is still complete holds every tip of the room
+        private boolean shortRoom;
+        private boolean truncated;
+
+        synchronized boolean isLoaded() {
+            return loaded;
+        }
+
+        synchronized void load(List<TipResponse> newest) {
+            if (loaded) {
+                return;
+            }
+            newest.forEach(this::insert);
+            shortRoom = newest.size() < capacity;
+            loaded = true;
+        }
+
+        synchronized void add(TipResponse tip) {
+            insert(tip);
+        }
+
+        synchronized Page page(int size) {
+            if (!loaded) {
+                return null;
+            }
+            if (tips.size() <= size) {
+                return shortRoom && !truncated ? new Page(List.copyOf(tips), null) : null;
+            }
+
+            List<TipResponse> page = new ArrayList<>(size);
+            Iterator<TipResponse> newestFirst = tips.iterator();
+            while (page.size() < size) {
+                page.add(newestFirst.next());
+            }
+            TipResponse last = page.getLast();
+            return new Page(page, new TipCursor(last.getCreatedAt(), last.getId()).encode());
+        }
+
+        private void insert(TipResponse tip) {
+            TipResponse newest = tips.peekFirst();
+            if (newest == null || NEWEST_FIRST.compare(tip, newest) < 0) {
+                tips.addFirst(tip);
+            } else {
+                if (tips.stream().anyMatch(existing -> existing.getId().equals(tip.getId()))) {
+                    return;
+                }
+                List<TipResponse> ordered = new ArrayList<>(tips);
+                int position = 0;
+                while (position < ordered.size() && NEWEST_FIRST.compare(ordered.get(position), tip) < 0) {
+                    position++;
+                }
+                if (position == capacity) {
+                    // Older than everything a full buffer holds
+                    truncated = true;
+                    return;
+                }
+                ordered.add(position, tip);
+                tips.clear();
+                tips.addAll(ordered);
+            }
+            if (tips.size() > capacity) {
+                tips.removeLast();
+                truncated = true;
+            }
+        }
+    }
+}
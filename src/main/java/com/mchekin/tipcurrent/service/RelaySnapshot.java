@@ -0,0 +1,61 @@
+package com.mchekin.tipcurrent.service;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The Postgres snapshot a room was seeded in, used to tell relayed tips the seed already counted
+ * from the ones it did not. A seed reads the room's tips less those still in the outbox, so a tip
+ * is in it exactly when the relay transaction that took it out of the outbox is visible in the
+ * seed's snapshot. Unlike a time window, this holds however late a tip is relayed.
+ *
+ * @param xmin        transactions before this one had all ended when the snapshot was taken
+ * @param xmax        transactions from this one on had not started
+ * @param inProgress  transactions in between that were still running
+ */
+record RelaySnapshot(long xmin, long xmax, Set<Long> inProgress) {
+
+    /**
+     * The ids of a room's tips still waiting in the outbox. Binds the room id twice.
+     */
+    static final String UNRELAYED_TIP_IDS_SQL = """
+            SELECT (payload::jsonb ->> 'id')::bigint AS id
+            FROM outbox_events
+            WHERE room_id = ? AND payload_type = 'TIP'
+            UNION ALL
+            SELECT (tip ->> 'id')::bigint
+            FROM outbox_events, jsonb_array_elements(payload::jsonb -> 'tips') AS tip
+            WHERE room_id = ? AND payload_type = 'ROOM_TIP_BATCH'
+            """;
+
+    /**
+     * Parses the text form of {@code pg_current_snapshot()}, {@code xmin:xmax:xip,...}.
+     */
+    static RelaySnapshot parse(String text) {
+        String[] parts = text.split(":", -1);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Not a Postgres snapshot: " + text);
+        }
+        Set<Long> inProgress = new HashSet<>();
+        if (!parts[2].isEmpty()) {
+            for (String xid : parts[2].split(",")) {
+                inProgress.add(Long.parseLong(xid));
+            }
+        }
+        return new RelaySnapshot(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Set.copyOf(inProgress));
+    }
+
+    /**
+     * Returns {@code true} when the relay transaction had committed by the time of the snapshot, so
+     * the seed counted its tips. A tip relayed without a known transaction is never taken as seeded.
+     */
+    boolean includes(Long relayXid) {
+        if (relayXid == null) {
+            return false;
+        }
+        if (relayXid < xmin) {
+            return true;
+        }
+        return relayXid < xmax && !inProgress.contains(relayXid);
+    }
+}
@@ -0,0 +1,114 @@
+package com.mchekin.tipcurrent.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over two generations of keys. New keys go into the current generation; lookups
+ * check both. Once the current generation is full or older than the rotation period it becomes
+ * the previous one and the old previous generation is discarded, so memory stays bounded and
+ * every key is remembered for at least one rotation period.
+ */
+class RollingBloomFilter {
+
+    private final int expectedInsertions;
+    private final int bitCount;
+    private final int hashCount;
+    private final long rotationNanos;
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    RollingBloomFilter(int expectedInsertions, double falsePositiveRate, Duration rotationPeriod) {
+        this.expectedInsertions = expectedInsertions;
+        double bits = -expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 64, Math.max(64, Math.ceil(bits)));
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.rotationNanos = rotationPeriod.toNanos();
+        this.current = new Generation(bitCount);
+        this.previous = new Generation(bitCount);
+    }
+
+    /**
+     * Returns {@code false} if the key was definitely not added within the retained generations.
+     */
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        return current.mightContain(hash, hashCount, bitCount) || previous.mightContain(hash, hashCount, bitCount);
+    }
+
+    void put(String key) {
+        Generation generation = current;
+        if (generation.insertions.get() >= expectedInsertions
+                || System.nanoTime() - generation.createdAt >= rotationNanos) {
+            generation = rotate(generation);
+        }
+        generation.put(hash(key), hashCount, bitCount);
+    }
+
+    void clear() {
+        synchronized (this) {
+            previous = new Generation(bitCount);
+            current = new Generation(bitCount);
+        }
+    }
+
+    private synchronized Generation rotate(Generation full) {
+        if (current == full) {
+            previous = full;
+            current = new Generation(bitCount);
+        }
+        return current;
+    }
+
+    // 64-bit FNV-1a finished with the MurmurHash3 mixer; the halves seed double hashing
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class Generation {
+
+        private final AtomicLongArray words;
+        private final AtomicInteger insertions = new AtomicInteger();
+        private final long createdAt = System.nanoTime();
+
+        Generation(int bitCount) {
+            this.words = new AtomicLongArray((bitCount + 63) / 64);
+        }
+
+        boolean mightContain(long hash, int hashCount, int bitCount) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long hash, int hashCount, int bitCount) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+                long mask = 1L << bit;
+                words.getAndUpdate(bit >>> 6, word -> word | mask);
+            }
+            insertions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package com.mchekin.tipcurrent.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mchekin.tipcurrent.broadcast.RoomAudience;
+import com.mchekin.tipcurrent.dto.LeaderboardEntry;
+import com.mchekin.tipcurrent.dto.RoomLeaderboardResponse;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Top tippers of every room by total amount, maintained as tips commit and pushed to
+ * {@code /topic/rooms/{id}/leaderboard} when a room's top {@code size} change.
+ * <p>
+ * Each room tracks at most {@code tracked-senders} senders with the Space-Saving algorithm, so a
+ * room with millions of senders costs no more than one with a few thousand, and a tip updates its
+ * sender's place in {@code O(log tracked-senders)}. A tip from an untracked sender, once the room is
+ * full, evicts the lowest tracked sender and is credited with that sender's total on top of its
+ * own, which bounds how much the newcomer can have tipped before. Totals are therefore exact while
+ * a room has no more senders than it tracks, and beyond that a sender can be overstated by at most
+ * the lowest tracked total at the time it came in. Senders with real totals above the lowest
+ * tracked one are always on the board.
+ * <p>
+ * A room's leaderboard is seeded from the tips table with its exact top senders when first read,
+ * and then follows the tips relayed by any node, which reach it through {@link ClusterBroadcast}
+ * exactly once per node; the {@link RelaySnapshot} the seed was read in tells which relayed tips it
+ * already counted. Rooms that go unread and get no tips for the idle period are evicted, and the
+ * number of rooms is capped.
+ */
+@Service
+@Slf4j
+public class RoomLeaderboards {
+
+    private static final String ROOM_PREFIX = "/topic/rooms/";
+    private static final String LEADERBOARD_SUFFIX = "/leaderboard";
+
+    // The top senders by the tips already relayed, read in one snapshot with the snapshot itself; an
+    // empty room still yields the snapshot. Binds the room id three times, then the senders to read.
+    private static final String SEED_SQL = """
+            WITH unrelayed AS (
+            """ + RelaySnapshot.UNRELAYED_TIP_IDS_SQL + """
+            ), top_senders AS (
+                SELECT sender_id, sum(amount) AS amount
+                FROM tips
+                WHERE room_id = ? AND id NOT IN (SELECT id FROM unrelayed)
+                GROUP BY sender_id
+                ORDER BY sum(amount) DESC, sender_id
+                LIMIT ?
+            )
+            SELECT pg_current_snapshot()::text AS snapshot, sender_id, amount
+            FROM (VALUES (1)) AS one LEFT JOIN top_senders ON true
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final RoomAudience roomAudience;
+    private final JsonMapper jsonMapper;
+    private final boolean enabled;
+    private final int size;
+    private final int trackedSenders;
+    private final Counter published;
+    private final Cache<String, Leaderboard> rooms;
+    // Seeds rooms for the publisher, whose scheduler is kept for short jobs
+    private final ExecutorService seeder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "leaderboard-seed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Rooms whose top entries changed since they were last pushed
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // Rooms whose leaderboard topic was subscribed to since the last push
+    private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+
+    public RoomLeaderboards(
+            JdbcTemplate jdbcTemplate,
+            SimpMessagingTemplate messagingTemplate,
+            RoomAudience roomAudience,
+            JsonMapper jsonMapper,
+            MeterRegistry meterRegistry,
+            @Value("${tipcurrent.leaderboard.enabled:true}") boolean enabled,
+            @Value("${tipcurrent.leaderboard.size:10}") int size,
+            @Value("${tipcurrent.leaderboard.tracked-senders:1000}") int trackedSenders,
+            @Value("${tipcurrent.leaderboard.max-rooms:10000}") long maxRooms,
+            @Value("${tipcurrent.leaderboard.idle-seconds:300}") long idleSeconds) {
+        if (size < 1 || trackedSenders < size) {
+            throw new IllegalArgumentException(
+                    "Leaderboards must track at least as many senders as they show: size=" + size
+                            + ", tracked-senders=" + trackedSenders);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.messagingTemplate = messagingTemplate;
+        this.roomAudience = roomAudience;
+        this.jsonMapper = jsonMapper;
+        this.enabled = enabled;
+        this.size = size;
+        this.trackedSenders = trackedSenders;
+        this.published = meterRegistry.counter("tipcurrent.leaderboard.published");
+        this.rooms = Caffeine.newBuilder()
+                .maximumSize(maxRooms)
+                .expireAfterAccess(Duration.ofSeconds(idleSeconds))
+                .build();
+        Gauge.builder("tipcurrent.leaderboard.rooms", rooms, Cache::estimatedSize)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        seeder.shutdownNow();
+    }
+
+    /**
+     * Drops every room's leaderboard, so each is seeded from the database again on its next read.
+     */
+    public void clear() {
+        rooms.invalidateAll();
+    }
+
+    /**
+     * Adds tips that have committed and been relayed, by this node or another, in the relay
+     * transaction given; tips relayed without one are always added. Rooms without a leaderboard are
+     * only marked as changed; they are seeded, tips included, when next read.
+     */
+    public void addAll(List<TipResponse> tips, Long relayXid) {
+        if (!enabled) {
+            return;
+        }
+        for (TipResponse tip : tips) {
+            Leaderboard leaderboard = rooms.getIfPresent(tip.getRoomId());
+            if (leaderboard == null || leaderboard.add(tip, relayXid)) {
+                dirty.add(tip.getRoomId());
+            }
+        }
+    }
+
+    public RoomLeaderboardResponse get(String roomId) {
+        if (!enabled) {
+            return RoomLeaderboardResponse.builder().roomId(roomId).entries(List.of()).build();
+        }
+        Leaderboard leaderboard = rooms.get(roomId, key -> new Leaderboard());
+        if (!leaderboard.isLoaded()) {
+            // Seeded here unless already under way, in which case this waits for it
+            try {
+                seed(roomId, leaderboard, Runnable::run).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return response(roomId, leaderboard);
+    }
+
+    /**
+     * Sends a new subscriber of a leaderboard topic the current ranking with the next push, rather
+     * than leaving it waiting for the ranking to change.
+     */
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        String destination = SimpMessageHeaderAccessor.getDestination(event.getMessage().getHeaders());
+        if (enabled && destination != null && destination.startsWith(ROOM_PREFIX) && destination.endsWith(LEADERBOARD_SUFFIX)) {
+            String roomId = destination.substring(ROOM_PREFIX.length(), destination.length() - LEADERBOARD_SUFFIX.length());
+            if (!roomId.isEmpty() && roomId.indexOf('/') < 0) {
+                subscribed.add(roomId);
+            }
+        }
+    }
+
+    /**
+     * Pushes the leaderboard of every room whose ranking changed, or that gained a subscriber, since
+     * the last run to its subscribers on this node. A room not seeded yet is seeded in the background
+     * and pushed on a later run.
+     */
+    @Scheduled(fixedDelayString = "${tipcurrent.leaderboard.publish-interval-ms:1000}")
+    public void publish() {
+        List<String> unseeded = new ArrayList<>();
+        for (Iterator<String> it = subscribed.iterator(); it.hasNext(); ) {
+            String roomId = it.next();
+            it.remove();
+            dirty.remove(roomId);
+            // Sent even if the broker has yet to register the subscription that was announced
+            if (!send(roomId)) {
+                unseeded.add(roomId);
+            }
+        }
+        subscribed.addAll(unseeded);
+        unseeded.clear();
+        for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+            String roomId = it.next();
+            it.remove();
+            if (roomAudience.hasSubscribers(ROOM_PREFIX + roomId + LEADERBOARD_SUFFIX) && !send(roomId)) {
+                unseeded.add(roomId);
+            }
+        }
+        dirty.addAll(unseeded);
+    }
+
+    // Returns false, and starts seeding the room, when it has no leaderboard to send yet
+    private boolean send(String roomId) {
+        Leaderboard leaderboard = rooms.get(roomId, key -> new Leaderboard());
+        if (!leaderboard.isLoaded()) {
+            seed(roomId, leaderboard, seeder).exceptionally(e -> {
+                log.warn("Failed to seed the leaderboard of room {}, retrying with the next push", roomId, e);
+                return null;
+            });
+            return false;
+        }
+        messagingTemplate.send(ROOM_PREFIX + roomId + LEADERBOARD_SUFFIX,
+                OutboxRelay.jsonMessage(jsonMapper.writeValueAsBytes(response(roomId, leaderboard))));
+        published.increment();
+        return true;
+    }
+
+    private RoomLeaderboardResponse response(String roomId, Leaderboard leaderboard) {
+        return RoomLeaderboardResponse.builder()
+                .roomId(roomId)
+                .entries(leaderboard.top())
+                .build();
+    }
+
+    /**
+     * Seeds the room on the executor given, or returns the seeding already under way. A room that
+     * fails to seed is dropped, to be seeded afresh on its next read.
+     */
+    private CompletableFuture<Void> seed(String roomId, Leaderboard leaderboard, Executor executor) {
+        CompletableFuture<Void> seeding = new CompletableFuture<>();
+        CompletableFuture<Void> underway = leaderboard.seeding.compareAndExchange(null, seeding);
+        if (underway != null) {
+            return underway;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    read(roomId, leaderboard);
+                    seeding.complete(null);
+                } catch (RuntimeException e) {
+                    rooms.asMap().remove(roomId, leaderboard);
+                    seeding.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            rooms.asMap().remove(roomId, leaderboard);
+            seeding.completeExceptionally(e);
+        }
+        return seeding;
+    }
+
+    // Read outside the room's lock; tips relayed meanwhile wait in the room
+    private void read(String roomId, Leaderboard leaderboard) {
+        List<SeedRow> seed = new ArrayList<>();
+        RelaySnapshot[] snapshot = new RelaySnapshot[1];
+        jdbcTemplate.query(SEED_SQL, row -> {
+            snapshot[0] = RelaySnapshot.parse(row.getString("snapshot"));
+            String senderId = row.getString("sender_id");
+            if (senderId != null) {
+                seed.add(new SeedRow(senderId, row.getBigDecimal("amount")));
+            }
+        }, roomId, roomId, roomId, trackedSenders);
+        leaderboard.load(snapshot[0], seed);
+    }
+
+    /**
+     * A sender's total of the tips the seed read.
+     */
+    private record SeedRow(String senderId, BigDecimal amount) {
+    }
+
+    private record Relayed(TipResponse tip, Long relayXid) {
+    }
+
+    /**
+     * A room's tracked senders, indexed by id and kept ordered by total, highest first. Until the
+     * room is seeded, relayed tips are held back; after that, tips whose relay the seed's snapshot
+     * saw are skipped, as the seed counted them.
+     */
+    private final class Leaderboard {
+
+        private static final Comparator<Sender> HIGHEST_FIRST = Comparator
+                .comparing(Sender::amount).reversed()
+                .thenComparing(Sender::id);
+
+        private final Map<String, Sender> senders = new HashMap<>();
+        private final TreeSet<Sender> ranking = new TreeSet<>(HIGHEST_FIRST);
+        private final AtomicReference<CompletableFuture<Void>> seeding = new AtomicReference<>();
+        private RelaySnapshot snapshot;
+        private List<Relayed> pending = new ArrayList<>();
+
+        synchronized boolean isLoaded() {
+            return pending == null;
+        }
+
+        synchronized void load(RelaySnapshot snapshot, List<SeedRow> seed) {
+            if (pending == null) {
+                return;
+            }
+            seed.forEach(row -> add(row.senderId(), row.amount()));
+            this.snapshot = snapshot;
+            List<Relayed> held = pending;
+            pending = null;
+            held.forEach(relayed -> add(relayed.tip(), relayed.relayXid()));
+        }
+
+        /**
+         * Adds a relayed tip to its sender's total, unless the seed already counted it.
+         *
+         * @return whether the top entries changed, or may have while the room is being seeded
+         */
+        synchronized boolean add(TipResponse tip, Long relayXid) {
+            if (pending != null) {
+                pending.add(new Relayed(tip, relayXid));
+                return true;
+            }
+            if (snapshot.includes(relayXid)) {
+                return false;
+            }
+            return add(tip.getSenderId(), tip.getAmount());
+        }
+
+        /**
+         * Adds to the sender's total.
+         *
+         * @return whether the top entries changed
+         */
+        private boolean add(String senderId, BigDecimal amount) {
+            Sender sender = senders.get(senderId);
+            boolean wasOnTop = false;
+            if (sender != null) {
+                wasOnTop = isOnTop(sender);
+                ranking.remove(sender);
+                sender = new Sender(senderId, sender.amount().add(amount));
+            } else if (senders.size() < trackedSenders) {
+                sender = new Sender(senderId, amount);
+            } else {
+                // The newcomer can have tipped at most as much as the lowest tracked sender before
+                Sender lowest = ranking.pollLast();
+                senders.remove(lowest.id());
+                sender = new Sender(senderId, lowest.amount().add(amount));
+            }
+            senders.put(senderId, sender);
+            ranking.add(sender);
+            return wasOnTop || isOnTop(sender);
+        }
+
+        synchronized List<LeaderboardEntry> top() {
+            List<LeaderboardEntry> entries = new ArrayList<>(Math.min(size, ranking.size()));
+            for (Sender sender : ranking) {
+                if (entries.size() == size) {
+                    break;
+                }
+                entries.add(LeaderboardEntry.builder()
+                        .rank(entries.size() + 1)
+                        .senderId(sender.id())
+                        .amount(sender.amount())
+                        .build());
+            }
+            return entries;
+        }
+
+        // The sender must be in the ranking
+        private boolean isOnTop(Sender sender) {
+            if (ranking.size() <= size) {
+                return true;
+            }
+            // The size-th entry bounds the top; reached by walking at most size entries
+            Iterator<Sender> highest = ranking.iterator();
+            Sender last = null;
+            for (int i = 0; i < size; i++) {
+                last = highest.next();
+            }
+            return HIGHEST_FIRST.compare(sender, last) <= 0;
+        }
+    }
+
+    private record Sender(String id, BigDecimal amount) {
+    }
+}
@@ -0,0 +1,252 @@
+package com.mchekin.tipcurrent.service;
+
+import com.mchekin.tipcurrent.domain.IdempotencyRecord;
+import com.mchekin.tipcurrent.domain.OutboxEvent;
+import com.mchekin.tipcurrent.domain.Tip;
+import com.mchekin.tipcurrent.dto.RoomTipBatch;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.IdempotencyRecordRepository;
+import com.mchekin.tipcurrent.repository.IdempotencyRecordRepositoryCustom.TipClaim;
+import com.mchekin.tipcurrent.repository.OutboxEventRepository;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TipBatchService {
+
+    private final TipRepository tipRepository;
+    private final IdempotencyRecordRepository idempotencyRepository;
+    private final IdempotencyCache idempotencyCache;
+    private final OutboxEventRepository outboxRepository;
+    private final OutboxRelay outboxRelay;
+    private final RecentTipsCache recentTipsCache;
+    private final JsonMapper jsonMapper;
+
+    @Getter
+    @Value("${tipcurrent.ingestion.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    /**
+     * Persists a batch of tips with one {@code tip.created} event per created tip.
+     *
+     * @see #createTips(List, FanOut)
+     */
+    @Transactional
+    public List<TipWriteResult> createTips(List<TipWrite> writes) {
+        return createTips(writes, FanOut.PER_TIP);
+    }
+
+    /**
+     * Persists a batch of tips in a single transaction. Keyed tips are claimed and inserted with one
+     * statement for the whole batch, so racing duplicates can never both create a tip and a replay
+     * costs a single round trip, or none when the key is still cached. A key already recorded, or
+     * repeated within the batch, replays the response it first produced. Results follow the input order.
+     * The {@code tip.created} events for the created tips are written to the outbox in the same
+     * transaction and dispatched by the {@link OutboxRelay} once it commits.
+     *
+     * @throws IdempotencyKeyMismatchException if a key is replayed with a different request; nothing
+     *                                         in the batch is persisted
+     */
+    @Transactional
+    public List<TipWriteResult> createTips(List<TipWrite> writes, FanOut fanOut) {
+        Map<String, Tip> firstTipByKey = new LinkedHashMap<>();
+        Map<String, String> fingerprintByKey = new HashMap<>();
+        Map<String, IdempotencyRecord> recordedByKey = new HashMap<>();
+        Set<String> probeKeys = new HashSet<>();
+
+        for (TipWrite write : writes) {
+            String key = write.idempotencyKey();
+            if (key == null) {
+                tipRepository.save(write.tip());
+                continue;
+            }
+
+            String fingerprint = fingerprint(write.tip());
+            if (firstTipByKey.containsKey(key)) {
+                checkFingerprint(key, fingerprintByKey.get(key), fingerprint);
+            } else if (recordedByKey.containsKey(key)) {
+                checkFingerprint(key, recordedByKey.get(key).getRequestFingerprint(), fingerprint);
+            } else {
+                IdempotencyRecord cached = idempotencyCache.getIfPresent(key);
+                if (cached != null) {
+                    checkFingerprint(key, cached.getRequestFingerprint(), fingerprint);
+                    recordedByKey.put(key, cached);
+                } else {
+                    firstTipByKey.put(key, write.tip());
+                    fingerprintByKey.put(key, fingerprint);
+                    if (idempotencyCache.mightBeRecorded(key)) {
+                        probeKeys.add(key);
+                    }
+                }
+            }
+        }
+
+        // Ids are needed up front: the response stored with each record must match the created tip
+        idempotencyRepository.assignIdentity(firstTipByKey.values());
+
+        Instant now = Instant.now();
+        Map<String, IdempotencyRecord> claimedByKey = new HashMap<>();
+        List<TipClaim> claims = new ArrayList<>(firstTipByKey.size());
+        firstTipByKey.forEach((key, tip) -> {
+            IdempotencyRecord record = IdempotencyRecord.builder()
+                    .idempotencyKey(key)
+                    .resourceId(tip.getId())
+                    .resourceType("Tip")
+                    .requestFingerprint(fingerprintByKey.get(key))
+                    .responseBody(jsonMapper.writeValueAsBytes(TipResponse.from(tip)))
+                    .createdAt(now)
+                    .expiresAt(now.plus(24, ChronoUnit.HOURS))
+                    .build();
+            claimedByKey.put(key, record);
+            claims.add(new TipClaim(record, tip));
+        });
+
+        Map<String, IdempotencyRecord> existing = idempotencyRepository.insertTipsIfAbsent(claims, probeKeys);
+        existing.forEach((key, record) -> {
+            checkFingerprint(key, record.getRequestFingerprint(), fingerprintByKey.get(key));
+            if (record.getResponseBody() == null) {
+                // Recorded before responses were stored alongside the key
+                tipRepository.findById(record.getResourceId()).ifPresent(tip ->
+                        record.setResponseBody(jsonMapper.writeValueAsBytes(TipResponse.from(tip))));
+            }
+            claimedByKey.remove(key);
+        });
+        recordedByKey.putAll(existing);
+
+        claimedByKey.keySet().stream()
+                .filter(probeKeys::contains)
+                .forEach(key -> idempotencyCache.recordFalsePositive());
+
+        Map<String, IdempotencyRecord> resolved = new HashMap<>(recordedByKey);
+        resolved.putAll(claimedByKey);
+        idempotencyCache.putAllAfterCommit(resolved);
+
+        List<TipWriteResult> results = new ArrayList<>(writes.size());
+        int created = 0;
+
+        for (TipWrite write : writes) {
+            String key = write.idempotencyKey();
+            if (key == null) {
+                results.add(new TipWriteResult(null, write.tip(), false,
+                        jsonMapper.writeValueAsBytes(TipResponse.from(write.tip()))));
+                created++;
+            } else if (recordedByKey.containsKey(key)) {
+                results.add(new TipWriteResult(key, null, true, recordedByKey.get(key).getResponseBody()));
+            } else if (firstTipByKey.get(key) != write.tip()) {
+                results.add(new TipWriteResult(key, null, true, claimedByKey.get(key).getResponseBody()));
+            } else {
+                results.add(new TipWriteResult(key, write.tip(), false, claimedByKey.get(key).getResponseBody()));
+                created++;
+            }
+        }
+
+        List<TipWriteResult> createdResults = results.stream()
+                .filter(result -> !result.replayed())
+                .toList();
+        appendEvents(createdResults, fanOut);
+        List<TipResponse> createdTips = createdResults.stream().map(result -> TipResponse.from(result.tip())).toList();
+        recentTipsCache.addAllAfterCommit(createdTips);
+
+        log.debug("Persisted tip batch: {} requested, {} created, {} replayed",
+                writes.size(), created, writes.size() - created);
+
+        return results;
+    }
+
+    private void appendEvents(List<TipWriteResult> created, FanOut fanOut) {
+        if (created.isEmpty()) {
+            return;
+        }
+
+        List<OutboxEvent> events = new ArrayList<>();
+        if (fanOut == FanOut.PER_TIP) {
+            // The event carries the very bytes of the tip's response, not a second serialization
+            created.forEach(result -> events.add(event(result.tip().getRoomId(), OutboxEvent.PayloadType.TIP,
+                    new String(result.responseBody(), StandardCharsets.UTF_8))));
+        } else {
+            Map<String, List<TipResponse>> createdByRoom = new LinkedHashMap<>();
+            created.forEach(result -> createdByRoom.computeIfAbsent(result.tip().getRoomId(), roomId -> new ArrayList<>())
+                    .add(TipResponse.from(result.tip())));
+            createdByRoom.forEach((roomId, tips) -> events.add(event(roomId, OutboxEvent.PayloadType.ROOM_TIP_BATCH,
+                    jsonMapper.writeValueAsString(RoomTipBatch.of(roomId, tips)))));
+        }
+
+        outboxRepository.saveAll(events);
+        outboxRelay.wakeUpAfterCommit();
+    }
+
+    private OutboxEvent event(String roomId, OutboxEvent.PayloadType payloadType, String payload) {
+        return OutboxEvent.builder()
+                .roomId(roomId)
+                .event("tip.created")
+                .payloadType(payloadType)
+                .payload(payload)
+                .build();
+    }
+
+    private void checkFingerprint(String key, String recorded, String requested) {
+        // Keys recorded before fingerprints were stored cannot be checked
+        if (recorded != null && !recorded.equals(requested)) {
+            throw new IdempotencyKeyMismatchException(key);
+        }
+    }
+
+    private String fingerprint(Tip tip) {
+        String canonical = String.join("\u001f",
+                tip.getRoomId(),
+                tip.getSenderId(),
+                tip.getRecipientId(),
+                tip.getAmount() == null ? "" : tip.getAmount().stripTrailingZeros().toPlainString(),
+                Objects.toString(tip.getMessage(), ""),
+                Objects.toString(tip.getMetadata(), ""));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * How created tips are announced: one event per tip, or one event per room carrying all of
+     * the room's tips from the batch.
+     */
+    public enum FanOut {
+        PER_TIP,
+        PER_ROOM
+    }
+
+    public record TipWrite(String idempotencyKey, Tip tip) {
+    }
+
+    /**
+     * Outcome of one write. {@code tip} is set only when the write created a tip. {@code responseBody}
+     * is the serialized response: for a created tip it is encoded once and shared by the HTTP response
+     * and the tip's event; for a replay it is the response recorded with the key, returned verbatim.
+     */
+    public record TipWriteResult(String idempotencyKey, Tip tip, boolean replayed, byte[] responseBody) {
+    }
+}
@@ -0,0 +1,54 @@
+package com.mchekin.tipcurrent.service;
+
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.repository.TipRepositoryCustom.TipFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TipExportService {
+
+    private final TipRepository tipRepository;
+    private final JsonMapper jsonMapper;
+
+    @Value("${tipcurrent.export.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Writes every tip matching the filter to {@code out} as newline-delimited JSON, oldest first.
+     * Rows are read through a database cursor and written as they arrive, so memory use stays flat
+     * however many tips match. The read-only transaction keeps the cursor open and gives the whole
+     * export one consistent snapshot.
+     *
+     * @return the number of tips written
+     */
+    @Transactional(readOnly = true)
+    public long export(TipFilter filter, boolean includeMetadata, OutputStream out) {
+        long start = System.currentTimeMillis();
+        AtomicLong written = new AtomicLong();
+
+        tipRepository.streamMatching(filter, includeMetadata, fetchSize, tip -> {
+            try {
+                out.write(jsonMapper.writeValueAsBytes(tip));
+                out.write('\n');
+                written.incrementAndGet();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        log.info("Exported {} tips in {} ms: {}", written.get(), System.currentTimeMillis() - start, filter);
+        return written.get();
+    }
+}
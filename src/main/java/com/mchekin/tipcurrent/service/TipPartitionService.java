@@ -0,0 +1,117 @@
+package com.mchekin.tipcurrent.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintains the daily range partitions of the {@code tips} table (see schema.sql). Partitions are
+ * created a few days ahead so inserts never fall through to {@code tips_default}, and partitions
+ * past the retention period can be detached, leaving a standalone table to archive or drop.
+ */
+@Service
+@Slf4j
+public class TipPartitionService {
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int premakeDays;
+    private final int retentionDays;
+
+    public TipPartitionService(
+            JdbcTemplate jdbcTemplate,
+            @Value("${tipcurrent.partitioning.tips.premake-days:7}") int premakeDays,
+            @Value("${tipcurrent.partitioning.tips.retention-days:0}") int retentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.premakeDays = premakeDays;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Creates the partitions for today and the configured number of days ahead. A day that fails is
+     * logged and retried on the next run without holding up the days after it.
+     *
+     * @return the number of partitions created
+     */
+    public int createUpcomingPartitions() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        int created = 0;
+
+        for (int i = 0; i <= premakeDays; i++) {
+            LocalDate day = today.plusDays(i);
+            try {
+                if (createPartition(day)) {
+                    created++;
+                }
+            } catch (DataAccessException e) {
+                log.error("Failed to create tip partition for {}", day, e);
+            }
+        }
+
+        if (created > 0) {
+            log.info("Created {} tip partitions up to {}", created, today.plusDays(premakeDays));
+        }
+        return created;
+    }
+
+    /**
+     * Creates the partition for a single UTC day unless its range is already covered, moving that
+     * day's tips out of {@code tips_default} into it.
+     */
+    public boolean createPartition(LocalDate day) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT create_tips_partition(?::date)", Boolean.class, day.toString()));
+    }
+
+    /**
+     * Detaches daily partitions older than the retention period. Does nothing when retention is disabled.
+     *
+     * @return the names of the detached partitions
+     */
+    public List<String> detachExpiredPartitions() {
+        if (retentionDays <= 0) {
+            return List.of();
+        }
+        return detachPartitionsBefore(LocalDate.now(ZoneOffset.UTC).minusDays(retentionDays));
+    }
+
+    /**
+     * Detaches every daily partition whose whole day falls before the cutoff.
+     *
+     * @return the names of the detached partitions
+     */
+    public List<String> detachPartitionsBefore(LocalDate cutoff) {
+        List<String> detached = new ArrayList<>();
+
+        for (String partition : listDailyPartitions()) {
+            LocalDate day = LocalDate.parse(partition.substring("tips_p".length()), PARTITION_SUFFIX);
+            if (day.isBefore(cutoff)) {
+                jdbcTemplate.execute("ALTER TABLE tips DETACH PARTITION " + partition);
+                detached.add(partition);
+                log.info("Detached tip partition {}; it remains as a standalone table for archiving", partition);
+            }
+        }
+
+        return detached;
+    }
+
+    public List<String> listDailyPartitions() {
+        return jdbcTemplate.queryForList("""
+                SELECT c.relname
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'tips'::regclass
+                  AND c.relname ~ '^tips_p[0-9]{8}$'
+                ORDER BY c.relname
+                """, String.class);
+    }
+}
@@ -1,14 +1,23 @@
 package com.mchekin.tipcurrent.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mchekin.tipcurrent.domain.OutboxEvent;
 import com.mchekin.tipcurrent.domain.Webhook;
+import com.mchekin.tipcurrent.domain.WebhookDelivery;
 import com.mchekin.tipcurrent.domain.WebhookDeliveryLog;
+import com.mchekin.tipcurrent.dto.EncodedEvent;
 import com.mchekin.tipcurrent.repository.WebhookDeliveryLogRepository;
+import com.mchekin.tipcurrent.repository.WebhookDeliveryRepository;
 import com.mchekin.tipcurrent.repository.WebhookRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.databind.json.JsonMapper;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -18,68 +27,238 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Delivers events to webhooks. The outbox relay queues one {@link WebhookDelivery} per webhook in
+ * the transaction that dispatches the event, and a delivery thread, woken when that transaction
+ * commits and polling as a fallback, posts the queued deliveries on a pool of workers. A delivery
+ * is deleted only after its outcome has been logged, so a crash at any point leaves it to be
+ * retried: delivery is at least once. Deliveries are not ordered, not even within a room.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class WebhookService {
 
     private final WebhookRepository webhookRepository;
+    private final WebhookDeliveryRepository deliveryRepository;
     private final WebhookDeliveryLogRepository deliveryLogRepository;
-
-    private final ObjectMapper objectMapper = new ObjectMapper()
-            .registerModule(new com.fasterxml.jackson.datatype.jsr310.JavaTimeModule());
+    private final JsonMapper jsonMapper;
+    private final int workerCount;
+    private final int maxAttempts;
+    private final long retryDelayMs;
+    private final long leaseSeconds;
+    private final long pollIntervalMs;
+    private final Counter delivered;
+    private final Counter retried;
+    private final Counter abandoned;
+    private final Semaphore wakeUps = new Semaphore(0);
 
     private final HttpClient httpClient = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(5))
             .build();
 
-    @Async
-    public void notifyWebhooks(String roomId, String event, Object payload) {
-        // Get room-specific webhooks
-        List<Webhook> roomWebhooks = webhookRepository.findByRoomIdAndEventAndEnabledTrue(roomId, event);
-        // Get global webhooks (roomId is null)
-        List<Webhook> globalWebhooks = webhookRepository.findByRoomIdIsNullAndEventAndEnabledTrue(event);
+    private volatile boolean running;
+    private Thread deliveryThread;
+    private ExecutorService workers;
+
+    public WebhookService(
+            WebhookRepository webhookRepository,
+            WebhookDeliveryRepository deliveryRepository,
+            WebhookDeliveryLogRepository deliveryLogRepository,
+            JsonMapper jsonMapper,
+            MeterRegistry meterRegistry,
+            @Value("${tipcurrent.webhook.delivery.workers:8}") int workerCount,
+            @Value("${tipcurrent.webhook.delivery.max-attempts:2}") int maxAttempts,
+            @Value("${tipcurrent.webhook.delivery.retry-delay-ms:5000}") long retryDelayMs,
+            @Value("${tipcurrent.webhook.delivery.lease-seconds:60}") long leaseSeconds,
+            @Value("${tipcurrent.webhook.delivery.poll-interval-ms:1000}") long pollIntervalMs) {
+        this.webhookRepository = webhookRepository;
+        this.deliveryRepository = deliveryRepository;
+        this.deliveryLogRepository = deliveryLogRepository;
+        this.jsonMapper = jsonMapper;
+        this.workerCount = workerCount;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMs = retryDelayMs;
+        this.leaseSeconds = leaseSeconds;
+        this.pollIntervalMs = pollIntervalMs;
+        this.delivered = meterRegistry.counter("tipcurrent.webhook.deliveries", "outcome", "delivered");
+        this.retried = meterRegistry.counter("tipcurrent.webhook.deliveries", "outcome", "retried");
+        this.abandoned = meterRegistry.counter("tipcurrent.webhook.deliveries", "outcome", "abandoned");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "webhook-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        deliveryThread = new Thread(this::runDeliveries, "webhook-delivery");
+        deliveryThread.start();
+    }
 
-        List<Webhook> allWebhooks = new ArrayList<>(roomWebhooks.size() + globalWebhooks.size());
-        allWebhooks.addAll(roomWebhooks);
-        allWebhooks.addAll(globalWebhooks);
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // Deliveries in flight stay queued and are retried once their lease runs out
+        running = false;
+        wakeUps.release();
+        deliveryThread.join(pollIntervalMs + 5000);
+        workers.shutdownNow();
+    }
 
-        log.info("Notifying {} webhooks for roomId={}, event={} ({} room-specific, {} global)",
-                allWebhooks.size(), roomId, event, roomWebhooks.size(), globalWebhooks.size());
+    /**
+     * Queues each event for every enabled webhook of its room and every enabled global webhook,
+     * and wakes the delivery thread once the surrounding transaction commits. Must run in the
+     * transaction that takes the events out of the outbox.
+     */
+    public void enqueue(List<OutboxEvent> events) {
+        List<WebhookDelivery> deliveries = new ArrayList<>();
+        Map<String, List<OutboxEvent>> byName = new LinkedHashMap<>();
+        for (OutboxEvent event : events) {
+            byName.computeIfAbsent(event.getEvent(), name -> new ArrayList<>()).add(event);
+        }
+        byName.forEach((name, named) -> {
+            Set<String> roomIds = new HashSet<>();
+            named.forEach(event -> roomIds.add(event.getRoomId()));
+            Map<String, List<Webhook>> byRoom = new HashMap<>();
+            for (Webhook webhook : webhookRepository.findByRoomIdInAndEventAndEnabledTrue(roomIds, name)) {
+                byRoom.computeIfAbsent(webhook.getRoomId(), roomId -> new ArrayList<>()).add(webhook);
+            }
+            List<Webhook> globalWebhooks = webhookRepository.findByRoomIdIsNullAndEventAndEnabledTrue(name);
 
-        for (Webhook webhook : allWebhooks) {
-            deliverWebhook(webhook, event, payload, 1);
+            for (OutboxEvent event : named) {
+                List<Webhook> roomWebhooks = byRoom.getOrDefault(event.getRoomId(), List.of());
+                for (List<Webhook> webhooks : List.of(roomWebhooks, globalWebhooks)) {
+                    for (Webhook webhook : webhooks) {
+                        deliveries.add(WebhookDelivery.builder()
+                                .webhookId(webhook.getId())
+                                .event(name)
+                                .payload(event.getPayload())
+                                .build());
+                    }
+                }
+            }
+        });
+        if (deliveries.isEmpty()) {
+            return;
         }
+        deliveryRepository.saveAll(deliveries);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeUps.release();
+            }
+        });
     }
 
     public void testWebhook(Long webhookId) {
         Webhook webhook = webhookRepository.findById(webhookId)
                 .orElseThrow(() -> new IllegalArgumentException("Webhook not found: " + webhookId));
 
-        Object testPayload = new TestWebhookPayload("test.event", "This is a test webhook delivery");
+        TestWebhookPayload testPayload = new TestWebhookPayload("test.event", "This is a test webhook delivery");
+
+        send(webhook, new EncodedEvent("test.event", jsonMapper.writeValueAsBytes(testPayload)), 1);
+    }
+
+    /**
+     * Claims due deliveries, at most one per worker, and waits until each has been attempted.
+     *
+     * @return the number of deliveries attempted
+     */
+    public int deliverBatch() throws InterruptedException {
+        List<WebhookDelivery> due = deliveryRepository.claimDue(workerCount, leaseSeconds);
+        List<Callable<Void>> attempts = new ArrayList<>(due.size());
+        for (WebhookDelivery delivery : due) {
+            attempts.add(() -> {
+                attempt(delivery);
+                return null;
+            });
+        }
+        workers.invokeAll(attempts);
+        return due.size();
+    }
 
-        deliverWebhook(webhook, "test.event", testPayload, 1);
+    private void runDeliveries() {
+        while (running) {
+            try {
+                wakeUps.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                wakeUps.drainPermits();
+                while (running && deliverBatch() == workerCount) {
+                    // Every worker was busy, so more deliveries are probably due
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                // Claimed deliveries come due again when their lease runs out
+                log.warn("Webhook delivery failed, retrying within {} ms", pollIntervalMs, e);
+            }
+        }
     }
 
-    private void deliverWebhook(Webhook webhook, String event, Object payload, int attemptNumber) {
+    private void attempt(WebhookDelivery delivery) {
+        try {
+            Webhook webhook = webhookRepository.findById(delivery.getWebhookId()).orElse(null);
+            if (webhook == null || !webhook.getEnabled()) {
+                log.info("Dropping delivery {} to removed or disabled webhook {}", delivery.getId(), delivery.getWebhookId());
+                deliveryRepository.deleteById(delivery.getId());
+                return;
+            }
+            boolean success = send(webhook, EncodedEvent.of(delivery.getEvent(), delivery.getPayload()),
+                    delivery.getAttempts());
+            if (success) {
+                delivered.increment();
+                deliveryRepository.deleteById(delivery.getId());
+            } else if (delivery.getAttempts() >= maxAttempts) {
+                log.error("Giving up on webhook delivery: webhookId={}, event={}, attempts={}",
+                        webhook.getId(), delivery.getEvent(), delivery.getAttempts());
+                abandoned.increment();
+                deliveryRepository.deleteById(delivery.getId());
+            } else {
+                retried.increment();
+                delivery.setNextAttemptAt(Instant.now().plusMillis(retryDelayMs));
+                deliveryRepository.save(delivery);
+            }
+        } catch (RuntimeException e) {
+            // Left claimed; it comes due again when its lease runs out
+            log.warn("Failed to record webhook delivery {}", delivery.getId(), e);
+        }
+    }
+
+    /**
+     * Posts the event to the webhook once and logs the outcome.
+     *
+     * @return whether the webhook answered with a 2xx status
+     */
+    private boolean send(Webhook webhook, EncodedEvent event, int attemptNumber) {
         long startTime = System.currentTimeMillis();
 
         try {
-            String jsonPayload = objectMapper.writeValueAsString(payload);
-            String signature = calculateHMAC(jsonPayload, webhook.getSecret());
+            String signature = calculateHMAC(event.json(), webhook.getSecret());
 
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(URI.create(webhook.getUrl()))
                     .timeout(Duration.ofSeconds(10))
                     .header("Content-Type", "application/json")
                     .header("X-TipCurrent-Signature", signature)
-                    .header("X-TipCurrent-Event", event)
+                    .header("X-TipCurrent-Event", event.name())
                     .header("X-TipCurrent-Delivery-Attempt", String.valueOf(attemptNumber))
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonPayload))
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(event.json()))
                     .build();
 
             HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
@@ -87,54 +266,40 @@ public class WebhookService {
 
             boolean success = response.statusCode() >= 200 && response.statusCode() < 300;
 
-            logDelivery(webhook.getId(), event, success, response.statusCode(),
+            logDelivery(webhook.getId(), event.name(), success, response.statusCode(),
                     response.body(), null, attemptNumber, durationMs);
 
             if (success) {
                 log.info("Webhook delivered successfully: webhookId={}, event={}, status={}",
-                        webhook.getId(), event, response.statusCode());
+                        webhook.getId(), event.name(), response.statusCode());
             } else {
                 log.warn("Webhook delivery failed: webhookId={}, event={}, status={}, attempt={}",
-                        webhook.getId(), event, response.statusCode(), attemptNumber);
-
-                // Simple retry logic: retry once after 5 seconds
-                if (attemptNumber == 1) {
-                    retryWebhook(webhook, event, payload, attemptNumber + 1);
-                }
+                        webhook.getId(), event.name(), response.statusCode(), attemptNumber);
             }
+            return success;
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Webhook delivery interrupted: webhookId={}, event={}", webhook.getId(), event.name());
+            return false;
         } catch (Exception e) {
             long durationMs = System.currentTimeMillis() - startTime;
 
             log.error("Webhook delivery exception: webhookId={}, event={}, attempt={}",
-                    webhook.getId(), event, attemptNumber, e);
+                    webhook.getId(), event.name(), attemptNumber, e);
 
-            logDelivery(webhook.getId(), event, false, 0, null,
+            logDelivery(webhook.getId(), event.name(), false, 0, null,
                     e.getMessage(), attemptNumber, durationMs);
-
-            // Simple retry logic: retry once after 5 seconds
-            if (attemptNumber == 1) {
-                retryWebhook(webhook, event, payload, attemptNumber + 1);
-            }
-        }
-    }
-
-    private void retryWebhook(Webhook webhook, String event, Object payload, int attemptNumber) {
-        try {
-            Thread.sleep(5000);  // Wait 5 seconds before retry
-            deliverWebhook(webhook, event, payload, attemptNumber);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("Webhook retry interrupted: webhookId={}, event={}", webhook.getId(), event);
+            return false;
         }
     }
 
-    private String calculateHMAC(String data, String secret) {
+    private String calculateHMAC(byte[] data, String secret) {
         try {
             Mac mac = Mac.getInstance("HmacSHA256");
             SecretKeySpec secretKeySpec = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
             mac.init(secretKeySpec);
-            byte[] hmacBytes = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+            byte[] hmacBytes = mac.doFinal(data);
             return Base64.getEncoder().encodeToString(hmacBytes);
         } catch (Exception e) {
             log.error("Failed to calculate HMAC", e);
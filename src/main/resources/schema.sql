@@ -0,0 +1,143 @@
+-- Executed on every startup before Hibernate updates the schema, so every statement must be idempotent.
+-- The whole file is sent as a single statement (see spring.sql.init.separator in application.properties).
+
+-- Pooled id sequences for high-volume entities. INCREMENT BY must match allocationSize in the entity mappings.
+CREATE SEQUENCE IF NOT EXISTS tips_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS webhook_delivery_logs_seq START WITH 1 INCREMENT BY 50;
+
+-- Tables created before sequence allocation already hold IDENTITY ids. Move each sequence past the
+-- highest existing id so the first pooled block cannot collide with them, then replace the IDENTITY
+-- with a sequence default. The default keeps plain SQL inserts working; a value taken with nextval()
+-- is the top of a block Hibernate never hands out, so the two cannot collide. Once migrated, a table
+-- is only read from the catalog: the MAX(id) scan and the ALTERs, which lock the table exclusively,
+-- run only while the id column still has an IDENTITY or lacks its default.
+DO $$
+DECLARE
+    target record;
+    max_id bigint;
+    last_id bigint;
+BEGIN
+    FOR target IN
+        SELECT t.table_name, t.sequence_name
+        FROM (VALUES ('tips', 'tips_seq'),
+                     ('webhook_delivery_logs', 'webhook_delivery_logs_seq')) AS t(table_name, sequence_name)
+        JOIN pg_attribute a ON a.attrelid = to_regclass(t.table_name) AND a.attname = 'id' AND NOT a.attisdropped
+        WHERE a.attidentity <> ''
+           OR NOT EXISTS (SELECT 1 FROM pg_attrdef d WHERE d.adrelid = a.attrelid AND d.adnum = a.attnum)
+    LOOP
+        EXECUTE format('SELECT COALESCE(MAX(id), 0) FROM %I', target.table_name) INTO max_id;
+        EXECUTE format('SELECT last_value FROM %I', target.sequence_name) INTO last_id;
+        IF max_id >= last_id THEN
+            PERFORM setval(target.sequence_name, max_id + 50);
+        END IF;
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP IDENTITY IF EXISTS', target.table_name);
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id SET DEFAULT nextval(%L)',
+                       target.table_name, target.sequence_name);
+    END LOOP;
+END
+$$;
+
+-- Tips are range partitioned by created_at into daily partitions (tips_pYYYYMMDD) that
+-- TipPartitionService creates ahead of time; tips_default catches rows outside every partition.
+-- A partitioned table's primary key must include the partition key, hence (id, created_at).
+-- A tips table created before partitioning is renamed and attached as the partition holding
+-- everything up to the end of the current day, so existing rows stay in place.
+DO $$
+DECLARE
+    legacy boolean := to_regclass('tips') IS NOT NULL
+        AND NOT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('tips'));
+    legacy_index record;
+BEGIN
+    IF legacy THEN
+        ALTER TABLE tips RENAME TO tips_legacy;
+        FOR legacy_index IN SELECT indexname FROM pg_indexes WHERE tablename = 'tips_legacy' LOOP
+            IF legacy_index.indexname = 'tips_pkey' THEN
+                -- A partition's primary key must match the parent's
+                ALTER TABLE tips_legacy DROP CONSTRAINT tips_pkey,
+                    ADD CONSTRAINT tips_legacy_pkey PRIMARY KEY (id, created_at);
+            ELSE
+                EXECUTE format('ALTER INDEX %I RENAME TO %I',
+                               legacy_index.indexname, legacy_index.indexname || '_legacy');
+            END IF;
+        END LOOP;
+    END IF;
+
+    CREATE TABLE IF NOT EXISTS tips (
+        id bigint NOT NULL DEFAULT nextval('tips_seq'),
+        amount numeric(19, 2) NOT NULL,
+        created_at timestamp(6) with time zone NOT NULL,
+        message varchar(1000),
+        metadata text,
+        recipient_id varchar(255) NOT NULL,
+        room_id varchar(255) NOT NULL,
+        sender_id varchar(255) NOT NULL,
+        PRIMARY KEY (id, created_at)
+    ) PARTITION BY RANGE (created_at);
+
+    CREATE TABLE IF NOT EXISTS tips_default PARTITION OF tips DEFAULT;
+
+    -- Hibernate cannot see indexes on partitioned tables, so they are declared here rather than on the entity.
+    -- Each listing filter has an index in listing order that includes every listed column but metadata,
+    -- so a page is one index range scan, index-only once the visibility map allows it.
+    CREATE INDEX IF NOT EXISTS idx_tips_room_created ON tips (room_id, created_at DESC, id DESC)
+        INCLUDE (sender_id, recipient_id, amount, message);
+    CREATE INDEX IF NOT EXISTS idx_tips_recipient_created ON tips (recipient_id, created_at DESC, id DESC)
+        INCLUDE (room_id, sender_id, amount, message);
+    CREATE INDEX IF NOT EXISTS idx_tips_sender_created ON tips (sender_id, created_at DESC, id DESC)
+        INCLUDE (room_id, recipient_id, amount, message);
+    CREATE INDEX IF NOT EXISTS idx_created_at ON tips (created_at);
+    -- Tips arrive in created_at order, so each block range covers a narrow time span and a BRIN index
+    -- a few pages in size narrows time-window scans down to the blocks that can match
+    CREATE INDEX IF NOT EXISTS idx_tips_created_at_brin ON tips USING brin (created_at) WITH (pages_per_range = 32);
+    -- Superseded by the listing indexes above, which lead with the same columns
+    DROP INDEX IF EXISTS idx_room_id;
+    DROP INDEX IF EXISTS idx_recipient_id;
+
+    IF legacy THEN
+        EXECUTE format('ALTER TABLE tips ATTACH PARTITION tips_legacy FOR VALUES FROM (MINVALUE) TO (%L)',
+                       date_trunc('day', now(), 'UTC') + interval '1 day');
+    END IF;
+END
+$$;
+
+-- Creates the daily partition for the given UTC day unless that range is already covered,
+-- e.g. by the legacy partition. Returns whether a partition was created. Tips of that day that fell
+-- through to tips_default would violate the new partition's range, so they are moved into it first:
+-- the partition is created standalone, filled with the rows taken out of tips_default and attached.
+CREATE OR REPLACE FUNCTION create_tips_partition(day date) RETURNS boolean AS $$
+DECLARE
+    partition_name text := 'tips_p' || to_char(day, 'YYYYMMDD');
+    range_start timestamptz := day::timestamp AT TIME ZONE 'UTC';
+    range_end timestamptz := (day + 1)::timestamp AT TIME ZONE 'UTC';
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN false;
+    END IF;
+    IF EXISTS (SELECT 1 FROM tips_default WHERE created_at >= range_start AND created_at < range_end) THEN
+        -- Attaching locks tips_default anyway; taking it first keeps rows from arriving between copy and delete
+        LOCK TABLE tips_default IN EXCLUSIVE MODE;
+        EXECUTE format('CREATE TABLE %I (LIKE tips INCLUDING DEFAULTS)', partition_name);
+        EXECUTE format('INSERT INTO %I SELECT * FROM tips_default WHERE created_at >= %L AND created_at < %L',
+                       partition_name, range_start, range_end);
+        DELETE FROM tips_default WHERE created_at >= range_start AND created_at < range_end;
+        EXECUTE format('ALTER TABLE tips ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                       partition_name, range_start, range_end);
+    ELSE
+        EXECUTE format('CREATE TABLE %I PARTITION OF tips FOR VALUES FROM (%L) TO (%L)',
+                       partition_name, range_start, range_end);
+    END IF;
+    RETURN true;
+EXCEPTION
+    WHEN invalid_object_definition THEN
+        -- Overlaps an existing partition
+        RETURN false;
+END
+$$ LANGUAGE plpgsql;
+
+-- Room events too large for a NOTIFY payload, published by ClusterBroadcast and read back by id on
+-- the other nodes. Rows are only needed for seconds and are pruned, so the table skips the WAL.
+CREATE UNLOGGED TABLE IF NOT EXISTS cluster_events (
+    id bigserial PRIMARY KEY,
+    payload text NOT NULL,
+    created_at timestamp(6) with time zone NOT NULL DEFAULT now()
+);
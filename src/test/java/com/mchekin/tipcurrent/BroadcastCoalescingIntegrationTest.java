@@ -0,0 +1,164 @@
+package com.mchekin.tipcurrent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "tipcurrent.broadcast.coalescing.window-ms=1000"
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class BroadcastCoalescingIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    private final List<JsonNode> frames = new CopyOnWriteArrayList<>();
+    private StompSession session;
+
+    @BeforeEach
+    @SuppressWarnings("deprecation") // MappingJackson2MessageConverter deprecated but no replacement yet in Spring Boot 4.0.1
+    void setUp() throws Exception {
+        tipRepository.deleteAll();
+
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+
+        session = stompClient
+                .connectAsync(String.format("ws://localhost:%d/ws", port), new StompSessionHandlerAdapter() {})
+                .get(10, TimeUnit.SECONDS);
+
+        session.subscribe("/topic/rooms/hot_room", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return JsonNode.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                frames.add((JsonNode) payload);
+            }
+        });
+
+        // Give subscription time to be fully registered
+        Thread.sleep(2000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.disconnect();
+    }
+
+    @Test
+    void shouldSendFirstTipImmediatelyAndCoalesceTheRestOfTheWindow() {
+        for (int i = 1; i <= 5; i++) {
+            createTip("hot_room", "viewer" + i, "10.00");
+        }
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> tipsIn(frames) == 5);
+
+        // The first tip opens the window and goes out on its own
+        assertThat(frames.getFirst().has("tips")).isFalse();
+        assertThat(frames.getFirst().get("senderId").asText()).isEqualTo("viewer1");
+
+        // Five tips created back to back cannot all need their own frame
+        assertThat(frames.size()).isLessThan(5);
+        JsonNode batch = frames.stream().filter(frame -> frame.has("tips")).findFirst().orElseThrow();
+        assertThat(batch.get("roomId").asText()).isEqualTo("hot_room");
+        assertThat(batch.get("tipCount").asInt()).isEqualTo(batch.get("tips").size());
+        assertThat(batch.get("totalAmount").decimalValue())
+                .isEqualByComparingTo(new BigDecimal("10.00").multiply(BigDecimal.valueOf(batch.get("tipCount").asInt())));
+
+        List<String> senders = new ArrayList<>();
+        for (JsonNode frame : frames) {
+            if (frame.has("tips")) {
+                frame.get("tips").forEach(tip -> senders.add(tip.get("senderId").asText()));
+            } else {
+                senders.add(frame.get("senderId").asText());
+            }
+        }
+        assertThat(senders).containsExactly("viewer1", "viewer2", "viewer3", "viewer4", "viewer5");
+    }
+
+    @Test
+    void shouldSendLoneTipAsItIs() {
+        createTip("hot_room", "alice", "25.00");
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !frames.isEmpty());
+
+        assertThat(frames).hasSize(1);
+        assertThat(frames.getFirst().has("tips")).isFalse();
+        assertThat(frames.getFirst().get("amount").decimalValue()).isEqualByComparingTo("25.00");
+    }
+
+    private void createTip(String roomId, String senderId, String amount) {
+        CreateTipRequest request = CreateTipRequest.builder()
+                .roomId(roomId)
+                .senderId(senderId)
+                .recipientId("streamer")
+                .amount(new BigDecimal(amount))
+                .build();
+        restTemplate.postForEntity(createUrl("/api/tips"), request, TipResponse.class);
+    }
+
+    private static int tipsIn(List<JsonNode> frames) {
+        return frames.stream().mapToInt(frame -> frame.has("tips") ? frame.get("tips").size() : 1).sum();
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
@@ -0,0 +1,355 @@
+package com.mchekin.tipcurrent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.LeaderboardEntry;
+import com.mchekin.tipcurrent.dto.TipPageResponse;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.OutboxEventRepository;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.service.LiveRoomStats;
+import com.mchekin.tipcurrent.service.OutboxRelay;
+import com.mchekin.tipcurrent.service.RecentTipsCache;
+import com.mchekin.tipcurrent.service.RoomLeaderboards;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * A second node is played by a plain connection listening on, and notifying, the cluster channel.
+ * The relay thread is disabled so each test decides when the outbox is drained.
+ */
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "tipcurrent.outbox.relay.enabled=false",
+        "tipcurrent.cluster.enabled=true"
+    }
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class ClusterBroadcastIntegrationTest {
+
+    private static final String CHANNEL = "tipcurrent_rooms";
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private LiveRoomStats liveRoomStats;
+
+    @Autowired
+    private RoomLeaderboards roomLeaderboards;
+
+    @Autowired
+    private RecentTipsCache recentTipsCache;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Connection otherNode;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tipRepository.deleteAll();
+        outboxRepository.deleteAll();
+        recentTipsCache.clear();
+        liveRoomStats.clear();
+        roomLeaderboards.clear();
+
+        otherNode = DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+        try (Statement statement = otherNode.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        otherNode.close();
+    }
+
+    @Test
+    void shouldPublishEachRoomOfRelayBatchAsOneNotification() throws Exception {
+        createTip("cluster_room", "alice", null);
+        createTip("cluster_room", "bob", null);
+        createTip("other_room", "carol", null);
+
+        assertThat(outboxRelay.relayBatch()).isEqualTo(3);
+
+        List<JsonNode> notices = receiveNotices(2);
+        assertThat(notices).extracting(notice -> notice.get("roomId").asText())
+                .containsExactly("cluster_room", "other_room");
+
+        JsonNode room = notices.getFirst();
+        assertThat(room.get("node").asText()).isNotBlank();
+        assertThat(room.get("sentAt").asLong()).isPositive();
+        assertThat(room.get("relayXid").asLong()).isPositive();
+        List<String> senders = new ArrayList<>();
+        room.get("events").forEach(event -> senders.add(readTree(event.asText()).get("senderId").asText()));
+        assertThat(senders).containsExactly("alice", "bob");
+    }
+
+    @Test
+    void shouldBroadcastEventsFromOtherNodesToLocalSubscribers() throws Exception {
+        List<JsonNode> frames = new CopyOnWriteArrayList<>();
+        StompSession session = subscribe("remote_room", frames);
+        // The first read seeds the room's totals and leaderboard, empty
+        assertThat(liveRoomStats.get("remote_room").getTotalTips()).isZero();
+        assertThat(roomLeaderboards.get("remote_room").getEntries()).isEmpty();
+
+        ObjectNode notice = objectMapper.createObjectNode()
+                .put("node", "other-node")
+                .put("roomId", "remote_room")
+                .put("sentAt", System.currentTimeMillis());
+        notice.putArray("events")
+                .add("{\"id\":1,\"roomId\":\"remote_room\",\"senderId\":\"alice\",\"amount\":10.00,"
+                        + "\"createdAt\":\"" + Instant.now() + "\"}")
+                .add("{\"id\":2,\"roomId\":\"remote_room\",\"senderId\":\"bob\",\"amount\":20.00,"
+                        + "\"createdAt\":\"" + Instant.now() + "\"}");
+        notify(notice.toString());
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 2);
+        assertThat(frames).extracting(frame -> frame.get("senderId").asText()).containsExactlyInAnyOrder("alice", "bob");
+        assertThat(meterRegistry.get("tipcurrent.cluster.delivery.latency").timer().count()).isPositive();
+
+        // Tips created on other nodes count towards this node's totals and leaderboards too
+        assertThat(liveRoomStats.get("remote_room").getTotalAmount()).isEqualByComparingTo("30.00");
+        assertThat(roomLeaderboards.get("remote_room").getEntries())
+                .extracting(LeaderboardEntry::getSenderId)
+                .containsExactly("bob", "alice");
+
+        session.disconnect();
+    }
+
+    @Test
+    void shouldCountEachTipOnceWhetherRelayedBeforeOrAfterTheSeed() throws Exception {
+        createTip("seeded_room", "alice", null);
+        outboxRelay.relayBatch();
+        JsonNode relayed = receiveNotices(1).getFirst();
+        createTip("seeded_room", "bob", null);
+
+        // Alice's tip was relayed before the seed and is in it; bob's is still in the outbox and is not
+        assertThat(liveRoomStats.get("seeded_room").getTotalTips()).isEqualTo(1);
+        assertThat(roomLeaderboards.get("seeded_room").getEntries())
+                .extracting(LeaderboardEntry::getSenderId)
+                .containsExactly("alice");
+
+        outboxRelay.relayBatch();
+        assertThat(liveRoomStats.get("seeded_room").getTotalTips()).isEqualTo(2);
+
+        // A node that hears of a relay only after seeding skips the tips its seed already has
+        notify(((ObjectNode) relayed).put("node", "other-node").toString());
+        Thread.sleep(1000);
+        assertThat(liveRoomStats.get("seeded_room").getTotalTips()).isEqualTo(2);
+        assertThat(liveRoomStats.get("seeded_room").getTotalAmount()).isEqualByComparingTo("20.00");
+        assertThat(roomLeaderboards.get("seeded_room").getEntries())
+                .hasSize(2)
+                .allSatisfy(entry -> assertThat(entry.getAmount()).isEqualByComparingTo("10.00"));
+    }
+
+    @Test
+    void shouldAddTipsFromOtherNodesToRecentTipsBuffer() {
+        // The first read seeds the room's buffer, empty
+        assertThat(getFirstPage("buffered_room").getContent()).isEmpty();
+
+        ObjectNode notice = objectMapper.createObjectNode()
+                .put("node", "other-node")
+                .put("roomId", "buffered_room")
+                .put("sentAt", System.currentTimeMillis());
+        notice.putArray("events").add("{\"id\":1,\"roomId\":\"buffered_room\",\"senderId\":\"alice\","
+                + "\"recipientId\":\"bob\",\"amount\":10.00,\"createdAt\":\"" + Instant.now() + "\"}");
+        notify(notice.toString());
+
+        // The tip only exists in the notification, so it can only have come from the buffer
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !getFirstPage("buffered_room").getContent().isEmpty());
+        assertThat(getFirstPage("buffered_room").getContent())
+                .extracting(TipResponse::getSenderId)
+                .containsExactly("alice");
+    }
+
+    @Test
+    void shouldNotBroadcastOwnNotificationsAgain() throws Exception {
+        List<JsonNode> frames = new CopyOnWriteArrayList<>();
+        StompSession session = subscribe("local_room", frames);
+
+        createTip("local_room", "alice", null);
+        outboxRelay.relayBatch();
+
+        assertThat(receiveNotices(1)).hasSize(1);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !frames.isEmpty());
+        Thread.sleep(1000);
+        assertThat(frames).hasSize(1);
+
+        session.disconnect();
+    }
+
+    @Test
+    void shouldPassEventsTooLargeForNotificationThroughTable() throws Exception {
+        List<JsonNode> frames = new CopyOnWriteArrayList<>();
+        StompSession session = subscribe("large_room", frames);
+
+        String metadata = "x".repeat(10_000);
+        createTip("large_room", "alice", metadata);
+        outboxRelay.relayBatch();
+
+        JsonNode notice = receiveNotices(1).getFirst();
+        assertThat(notice.get("events").isNull()).isTrue();
+        long ref = notice.get("ref").asLong();
+        String stored = jdbcTemplate.queryForObject("SELECT payload FROM cluster_events WHERE id = ?", String.class, ref);
+        assertThat(stored).contains(metadata);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 1);
+
+        // The same notification arriving from another node is resolved from the table
+        notify(((ObjectNode) notice).put("node", "other-node").toString());
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> frames.size() == 2);
+        assertThat(frames.get(1).get("metadata").asText()).isEqualTo(metadata);
+
+        session.disconnect();
+    }
+
+    private TipPageResponse getFirstPage(String roomId) {
+        return restTemplate.getForObject(
+                createUrl("/api/tips?roomId=" + roomId + "&size=10"), TipPageResponse.class);
+    }
+
+    private List<JsonNode> receiveNotices(int count) throws Exception {
+        PGConnection listener = otherNode.unwrap(PGConnection.class);
+        List<JsonNode> notices = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (notices.size() < count && System.currentTimeMillis() < deadline) {
+            PGNotification[] notifications = listener.getNotifications(500);
+            if (notifications != null) {
+                for (PGNotification notification : notifications) {
+                    notices.add(readTree(notification.getParameter()));
+                }
+            }
+        }
+        return notices;
+    }
+
+    private void notify(String payload) {
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, CHANNEL, payload);
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("deprecation") // MappingJackson2MessageConverter deprecated but no replacement yet in Spring Boot 4.0.1
+    private StompSession subscribe(String roomId, List<JsonNode> frames) throws Exception {
+        // Large enough for the oversized tip, which the default 8 KB buffer would reject
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxTextMessageBufferSize(64 * 1024);
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient(container));
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+
+        StompSession session = stompClient
+                .connectAsync(String.format("ws://localhost:%d/ws", port), new StompSessionHandlerAdapter() {})
+                .get(10, TimeUnit.SECONDS);
+
+        session.subscribe("/topic/rooms/" + roomId, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return JsonNode.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                frames.add((JsonNode) payload);
+            }
+        });
+
+        // Give subscription time to be fully registered
+        Thread.sleep(1000);
+        return session;
+    }
+
+    private void createTip(String roomId, String senderId, String metadata) {
+        CreateTipRequest request = CreateTipRequest.builder()
+                .roomId(roomId)
+                .senderId(senderId)
+                .recipientId("streamer")
+                .amount(new BigDecimal("10.00"))
+                .metadata(metadata)
+                .build();
+        restTemplate.postForEntity(createUrl("/api/tips"), request, TipResponse.class);
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
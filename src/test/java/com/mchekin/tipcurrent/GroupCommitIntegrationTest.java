@@ -0,0 +1,123 @@
+package com.mchekin.tipcurrent;
+
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "tipcurrent.ingestion.group-commit.enabled=true"
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class GroupCommitIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAll();
+    }
+
+    @Test
+    void shouldPersistTipBeforeRespondingCreated() {
+        ResponseEntity<TipResponse> response = restTemplate.postForEntity(
+                createUrl("/api/tips"),
+                tipRequest("alice", "25.00"),
+                TipResponse.class
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(response.getBody()).isNotNull();
+        assertThat(response.getBody().getId()).isNotNull();
+        assertThat(response.getBody().getCreatedAt()).isNotNull();
+        assertThat(tipRepository.findById(response.getBody().getId())).isPresent();
+    }
+
+    @Test
+    void shouldPersistConcurrentTipsInBatches() throws Exception {
+        int tipCount = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+
+        try {
+            List<Future<ResponseEntity<TipResponse>>> futures = new ArrayList<>();
+            for (int i = 0; i < tipCount; i++) {
+                CreateTipRequest request = tipRequest("sender" + i, "10.00");
+                futures.add(executor.submit(() -> restTemplate.postForEntity(
+                        createUrl("/api/tips"),
+                        request,
+                        TipResponse.class
+                )));
+            }
+
+            List<Long> ids = new ArrayList<>();
+            for (Future<ResponseEntity<TipResponse>> future : futures) {
+                ResponseEntity<TipResponse> response = future.get();
+                assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+                ids.add(response.getBody().getId());
+            }
+
+            assertThat(ids).doesNotHaveDuplicates();
+            assertThat(tipRepository.count()).isEqualTo(tipCount);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private CreateTipRequest tipRequest(String senderId, String amount) {
+        return CreateTipRequest.builder()
+                .roomId("raid_room")
+                .senderId(senderId)
+                .recipientId("streamer")
+                .amount(new BigDecimal(amount))
+                .build();
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
@@ -0,0 +1,116 @@
+package com.mchekin.tipcurrent;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Talks raw STOMP over the WebSocket, so each test decides exactly which heartbeats its client
+ * asks for and sends.
+ */
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "tipcurrent.broadcast.heartbeat.interval-ms=1000"
+)
+@Testcontainers
+class HeartbeatIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void shouldSendHeartbeatsClientAsksFor() throws Exception {
+        Client client = connect("0,500");
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !client.frames().isEmpty());
+        assertThat(client.frames().getFirst()).startsWith("CONNECTED").contains("heart-beat:1000,1000");
+
+        // The server sends at the larger of the two intervals
+        Thread.sleep(3500);
+        long heartbeats = client.frames().stream().filter("\n"::equals).count();
+        assertThat(heartbeats).isBetween(2L, 5L);
+        assertThat(client.session().isOpen()).isTrue();
+
+        client.session().close();
+    }
+
+    @Test
+    void shouldCloseSessionWhoseClientStopsSendingHeartbeats() throws Exception {
+        Client client = connect("1000,0");
+
+        // Silent for three intervals
+        Thread.sleep(2000);
+        assertThat(client.session().isOpen()).isTrue();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> client.closed().size() == 1);
+    }
+
+    @Test
+    void shouldKeepSessionWhoseClientSendsHeartbeats() throws Exception {
+        Client client = connect("1000,0");
+
+        for (int i = 0; i < 10; i++) {
+            client.session().sendMessage(new TextMessage("\n"));
+            Thread.sleep(500);
+        }
+        assertThat(client.session().isOpen()).isTrue();
+        assertThat(client.closed()).isEmpty();
+
+        client.session().close();
+    }
+
+    private Client connect(String heartbeat) throws Exception {
+        List<String> frames = new CopyOnWriteArrayList<>();
+        List<CloseStatus> closed = new CopyOnWriteArrayList<>();
+        WebSocketSession session = new StandardWebSocketClient()
+                .execute(new TextWebSocketHandler() {
+                    @Override
+                    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+                        frames.add(message.getPayload());
+                    }
+
+                    @Override
+                    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+                        closed.add(status);
+                    }
+                }, String.format("ws://localhost:%d/ws", port))
+                .get(10, TimeUnit.SECONDS);
+
+        session.sendMessage(new TextMessage(
+                "CONNECT\naccept-version:1.2\nhost:localhost\nheart-beat:" + heartbeat + "\n\n\0"));
+        return new Client(session, frames, closed);
+    }
+
+    private record Client(WebSocketSession session, List<String> frames, List<CloseStatus> closed) {
+    }
+}
@@ -0,0 +1,91 @@
+package com.mchekin.tipcurrent;
+
+import com.mchekin.tipcurrent.broadcast.HeartbeatWheel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Drives the wheel with short intervals and a fine tick, at the session counts a node is meant to hold.
+ */
+class HeartbeatWheelTest {
+
+    private static final int SESSIONS = 100_000;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Set<String> heartbeats = ConcurrentHashMap.newKeySet();
+    private final Set<String> expired = ConcurrentHashMap.newKeySet();
+    private final HeartbeatWheel wheel = new HeartbeatWheel(10, 512, new HeartbeatWheel.Listener() {
+        @Override
+        public void heartbeatDue(String sessionId) {
+            heartbeats.add(sessionId);
+        }
+
+        @Override
+        public void expired(String sessionId) {
+            expired.add(sessionId);
+        }
+    }, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void shouldSendHeartbeatToEverySession() {
+        for (int i = 0; i < SESSIONS; i++) {
+            wheel.register("session-" + i, 500, 0);
+        }
+        wheel.start();
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> heartbeats.size() == SESSIONS);
+        assertThat(expired).isEmpty();
+        assertThat(wheel.size()).isEqualTo(SESSIONS);
+        assertThat(meterRegistry.get("tipcurrent.scheduler.lag").tag("scheduler", "heartbeat").timer().count())
+                .isPositive();
+    }
+
+    @Test
+    void shouldExpireOnlySessionsWhoseClientsWentSilent() throws Exception {
+        for (int i = 0; i < SESSIONS; i++) {
+            wheel.register("session-" + i, 0, 1000);
+        }
+        wheel.start();
+
+        // Even sessions keep reading well past the timeout, odd ones go silent
+        long until = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < until) {
+            for (int i = 0; i < SESSIONS; i += 2) {
+                wheel.touch("session-" + i);
+            }
+            Thread.sleep(100);
+        }
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> expired.size() == SESSIONS / 2);
+        assertThat(expired).allMatch(id -> Integer.parseInt(id.substring("session-".length())) % 2 == 1);
+        assertThat(wheel.size()).isEqualTo(SESSIONS / 2);
+        assertThat(heartbeats).isEmpty();
+    }
+
+    @Test
+    void shouldForgetRemovedSessions() throws Exception {
+        wheel.register("kept", 100, 0);
+        wheel.register("removed", 100, 1);
+        wheel.remove("removed");
+        wheel.start();
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> heartbeats.contains("kept"));
+        Thread.sleep(500);
+        assertThat(heartbeats).containsExactly("kept");
+        assertThat(expired).isEmpty();
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+}
@@ -6,6 +6,8 @@ import com.mchekin.tipcurrent.dto.TipResponse;
 import com.mchekin.tipcurrent.repository.IdempotencyRecordRepository;
 import com.mchekin.tipcurrent.repository.TipRepository;
 import com.mchekin.tipcurrent.scheduler.IdempotencyCleanupScheduler;
+import com.mchekin.tipcurrent.service.IdempotencyCache;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,16 +23,28 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 @SpringBootTest(
     classes = TipcurrentApplication.class,
-    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "tipcurrent.idempotency.cleanup.chunk-size=10",
+        "tipcurrent.idempotency.cleanup.pause-ms=0"
+    }
 )
 @AutoConfigureTestRestTemplate
 @Testcontainers
@@ -64,10 +78,17 @@ class IdempotencyIntegrationTest {
     @Autowired
     private IdempotencyCleanupScheduler cleanupScheduler;
 
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @BeforeEach
     void setUp() {
         tipRepository.deleteAll();
         idempotencyRepository.deleteAll();
+        idempotencyCache.clear();
     }
 
     @Test
@@ -252,6 +273,40 @@ class IdempotencyIntegrationTest {
         assertThat(idempotencyRepository.findById("valid-key-456")).isPresent();
     }
 
+    @Test
+    void shouldCleanupExpiredRecordsInChunks() {
+        List<IdempotencyRecord> records = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            records.add(IdempotencyRecord.builder()
+                    .idempotencyKey("expired-" + i)
+                    .resourceId((long) i)
+                    .resourceType("Tip")
+                    .createdAt(Instant.now().minus(48, ChronoUnit.HOURS))
+                    .expiresAt(Instant.now().minus(24, ChronoUnit.HOURS))
+                    .build());
+        }
+        records.add(IdempotencyRecord.builder()
+                .idempotencyKey("still-valid")
+                .resourceId(100L)
+                .resourceType("Tip")
+                .createdAt(Instant.now())
+                .expiresAt(Instant.now().plus(24, ChronoUnit.HOURS))
+                .build());
+        idempotencyRepository.saveAll(records);
+
+        double removedBefore = meterRegistry.counter("tipcurrent.idempotency.cleanup.rows").count();
+        long runsBefore = meterRegistry.timer("tipcurrent.idempotency.cleanup").count();
+
+        // 25 expired rows with a chunk size of 10 take three chunks
+        cleanupScheduler.cleanupExpiredRecords();
+
+        assertThat(idempotencyRepository.findAll())
+                .extracting(IdempotencyRecord::getIdempotencyKey)
+                .containsExactly("still-valid");
+        assertThat(meterRegistry.counter("tipcurrent.idempotency.cleanup.rows").count()).isEqualTo(removedBefore + 25);
+        assertThat(meterRegistry.timer("tipcurrent.idempotency.cleanup").count()).isEqualTo(runsBefore + 1);
+    }
+
     @Test
     void shouldHandleIdempotencyKeyForConsecutiveRequests() {
         // Create 5 requests with same idempotency key
@@ -293,6 +348,180 @@ class IdempotencyIntegrationTest {
         assertThat(idempotencyRepository.count()).isEqualTo(1);
     }
 
+    @Test
+    void shouldCreateSingleTipForConcurrentRequestsWithSameIdempotencyKey() throws Exception {
+        String idempotencyKey = UUID.randomUUID().toString();
+        CreateTipRequest request = CreateTipRequest.builder()
+                .roomId("room1")
+                .senderId("alice")
+                .recipientId("bob")
+                .amount(new BigDecimal("75.00"))
+                .build();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Idempotency-Key", idempotencyKey);
+
+        HttpEntity<CreateTipRequest> entity = new HttpEntity<>(request, headers);
+
+        int requestCount = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(requestCount);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            List<Future<ResponseEntity<TipResponse>>> futures = new ArrayList<>();
+            for (int i = 0; i < requestCount; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return restTemplate.exchange(createUrl("/api/tips"), HttpMethod.POST, entity, TipResponse.class);
+                }));
+            }
+            start.countDown();
+
+            List<ResponseEntity<TipResponse>> responses = new ArrayList<>();
+            for (Future<ResponseEntity<TipResponse>> future : futures) {
+                responses.add(future.get(30, TimeUnit.SECONDS));
+            }
+
+            // Exactly one request wins the key, every other one replays its tip
+            assertThat(responses).filteredOn(r -> r.getStatusCode() == HttpStatus.CREATED).hasSize(1);
+            assertThat(responses).filteredOn(r -> r.getStatusCode() == HttpStatus.OK).hasSize(requestCount - 1);
+            assertThat(responses).extracting(r -> r.getBody().getId()).containsOnly(responses.getFirst().getBody().getId());
+
+            assertThat(tipRepository.count()).isEqualTo(1);
+            assertThat(idempotencyRepository.count()).isEqualTo(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void shouldServeReplayFromCacheAndSkipLookupForNewKey() {
+        HttpEntity<CreateTipRequest> entity = keyedRequest(UUID.randomUUID().toString());
+        double newKeys = meterValue("tipcurrent.idempotency.bloom", "new");
+        double cacheHits = meterValue("tipcurrent.idempotency.cache", "hit");
+
+        ResponseEntity<TipResponse> first = restTemplate.exchange(
+                createUrl("/api/tips"), HttpMethod.POST, entity, TipResponse.class);
+        ResponseEntity<TipResponse> replay = restTemplate.exchange(
+                createUrl("/api/tips"), HttpMethod.POST, entity, TipResponse.class);
+
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(replay.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(replay.getBody().getId()).isEqualTo(first.getBody().getId());
+        assertThat(meterValue("tipcurrent.idempotency.bloom", "new")).isEqualTo(newKeys + 1);
+        assertThat(meterValue("tipcurrent.idempotency.cache", "hit")).isEqualTo(cacheHits + 1);
+        assertThat(tipRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReplayFromDatabaseWhenKeyIsUnknownToThisNode() {
+        HttpEntity<CreateTipRequest> entity = keyedRequest(UUID.randomUUID().toString());
+
+        ResponseEntity<TipResponse> first = restTemplate.exchange(
+                createUrl("/api/tips"), HttpMethod.POST, entity, TipResponse.class);
+
+        // As if the key had been recorded by another node or before a restart
+        idempotencyCache.clear();
+
+        ResponseEntity<TipResponse> replay = restTemplate.exchange(
+                createUrl("/api/tips"), HttpMethod.POST, entity, TipResponse.class);
+
+        assertThat(replay.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(replay.getBody().getId()).isEqualTo(first.getBody().getId());
+        assertThat(replay.getBody().getAmount()).isEqualByComparingTo(first.getBody().getAmount());
+        assertThat(tipRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReplayRecordedResponseVerbatim() {
+        String idempotencyKey = UUID.randomUUID().toString();
+        HttpEntity<CreateTipRequest> entity = keyedRequest(idempotencyKey);
+
+        ResponseEntity<String> first = restTemplate.exchange(
+                createUrl("/api/tips"), HttpMethod.POST, entity, String.class);
+
+        // Serve the replay from the database rather than the in-process cache
+        idempotencyCache.clear();
+
+        ResponseEntity<String> replay = restTemplate.exchange(
+                createUrl("/api/tips"), HttpMethod.POST, entity, String.class);
+
+        assertThat(replay.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(replay.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(replay.getBody()).isEqualTo(first.getBody());
+
+        IdempotencyRecord record = idempotencyRepository.findById(idempotencyKey).orElseThrow();
+        assertThat(record.getRequestFingerprint()).hasSize(64);
+        assertThat(new String(record.getResponseBody(), StandardCharsets.UTF_8)).isEqualTo(first.getBody());
+    }
+
+    @Test
+    void shouldRejectReplayWithDifferentRequest() {
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        restTemplate.exchange(createUrl("/api/tips"), HttpMethod.POST, keyedRequest(idempotencyKey), TipResponse.class);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Idempotency-Key", idempotencyKey);
+        CreateTipRequest different = CreateTipRequest.builder()
+                .roomId("room1")
+                .senderId("alice")
+                .recipientId("bob")
+                .amount(new BigDecimal("999.00"))
+                .build();
+
+        ResponseEntity<String> response = restTemplate.exchange(
+                createUrl("/api/tips"), HttpMethod.POST, new HttpEntity<>(different, headers), String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_CONTENT);
+        assertThat(tipRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldTreatEquivalentAmountsAsSameRequest() {
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        ResponseEntity<TipResponse> first = restTemplate.exchange(
+                createUrl("/api/tips"), HttpMethod.POST, keyedRequest(idempotencyKey), TipResponse.class);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Idempotency-Key", idempotencyKey);
+        CreateTipRequest sameAmount = CreateTipRequest.builder()
+                .roomId("room1")
+                .senderId("alice")
+                .recipientId("bob")
+                .amount(new BigDecimal("15"))
+                .build();
+
+        ResponseEntity<TipResponse> replay = restTemplate.exchange(
+                createUrl("/api/tips"), HttpMethod.POST, new HttpEntity<>(sameAmount, headers), TipResponse.class);
+
+        assertThat(replay.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(replay.getBody().getId()).isEqualTo(first.getBody().getId());
+    }
+
+    private HttpEntity<CreateTipRequest> keyedRequest(String idempotencyKey) {
+        CreateTipRequest request = CreateTipRequest.builder()
+                .roomId("room1")
+                .senderId("alice")
+                .recipientId("bob")
+                .amount(new BigDecimal("15.00"))
+                .build();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Idempotency-Key", idempotencyKey);
+
+        return new HttpEntity<>(request, headers);
+    }
+
+    private double meterValue(String name, String result) {
+        return meterRegistry.counter(name, "result", result).count();
+    }
+
     private String createUrl(String path) {
         return "http://localhost:" + port + path;
     }
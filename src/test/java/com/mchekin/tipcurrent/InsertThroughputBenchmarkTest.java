@@ -0,0 +1,167 @@
+package com.mchekin.tipcurrent;
+
+import com.mchekin.tipcurrent.domain.Tip;
+import com.mchekin.tipcurrent.domain.WebhookDeliveryLog;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.repository.WebhookDeliveryLogRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares insert throughput of IDENTITY-style row-at-a-time inserts (one round trip per row,
+ * which is what Hibernate does for IDENTITY ids) with pooled-sequence batched inserts.
+ * Run with {@code ./mvnw test -Dtest=InsertThroughputBenchmarkTest -Dbenchmark=true}.
+ */
+@SpringBootTest(classes = TipcurrentApplication.class)
+@Testcontainers
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class InsertThroughputBenchmarkTest {
+
+    private static final int ROWS = 10_000;
+    private static final int WARMUP_ROWS = 1_000;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private WebhookDeliveryLogRepository deliveryLogRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        tipRepository.deleteAllInBatch();
+        deliveryLogRepository.deleteAllInBatch();
+
+        // Shadow tables with the old IDENTITY id generation
+        jdbcTemplate.execute("DROP TABLE IF EXISTS tips_identity, webhook_delivery_logs_identity");
+        jdbcTemplate.execute("CREATE TABLE tips_identity (LIKE tips)");
+        jdbcTemplate.execute("ALTER TABLE tips_identity ALTER COLUMN id ADD GENERATED BY DEFAULT AS IDENTITY");
+        jdbcTemplate.execute("CREATE TABLE webhook_delivery_logs_identity (LIKE webhook_delivery_logs)");
+        jdbcTemplate.execute("ALTER TABLE webhook_delivery_logs_identity ALTER COLUMN id ADD GENERATED BY DEFAULT AS IDENTITY");
+    }
+
+    @Test
+    void compareTipInsertThroughput() {
+        insertTipsWithIdentity(WARMUP_ROWS);
+        insertTipsWithSequence(WARMUP_ROWS);
+
+        long identityNanos = time(() -> insertTipsWithIdentity(ROWS));
+        long sequenceNanos = time(() -> insertTipsWithSequence(ROWS));
+
+        report("tips", identityNanos, sequenceNanos);
+        assertThat(tipRepository.count()).isEqualTo(WARMUP_ROWS + ROWS);
+    }
+
+    @Test
+    void compareDeliveryLogInsertThroughput() {
+        insertDeliveryLogsWithIdentity(WARMUP_ROWS);
+        insertDeliveryLogsWithSequence(WARMUP_ROWS);
+
+        long identityNanos = time(() -> insertDeliveryLogsWithIdentity(ROWS));
+        long sequenceNanos = time(() -> insertDeliveryLogsWithSequence(ROWS));
+
+        report("webhook_delivery_logs", identityNanos, sequenceNanos);
+        assertThat(deliveryLogRepository.count()).isEqualTo(WARMUP_ROWS + ROWS);
+    }
+
+    private void insertTipsWithIdentity(int rows) {
+        transactionTemplate.executeWithoutResult(status -> IntStream.range(0, rows).forEach(i ->
+                jdbcTemplate.queryForObject("""
+                        INSERT INTO tips_identity (room_id, sender_id, recipient_id, amount, message, created_at)
+                        VALUES (?, ?, ?, ?, ?, ?) RETURNING id
+                        """, Long.class,
+                        "room" + (i % 100), "sender" + i, "recipient", new BigDecimal("10.00"), "Benchmark",
+                        Timestamp.from(Instant.now()))));
+    }
+
+    private void insertTipsWithSequence(int rows) {
+        List<Tip> tips = IntStream.range(0, rows)
+                .mapToObj(i -> Tip.builder()
+                        .roomId("room" + (i % 100))
+                        .senderId("sender" + i)
+                        .recipientId("recipient")
+                        .amount(new BigDecimal("10.00"))
+                        .message("Benchmark")
+                        .build())
+                .toList();
+        transactionTemplate.executeWithoutResult(status -> tipRepository.saveAll(tips));
+    }
+
+    private void insertDeliveryLogsWithIdentity(int rows) {
+        transactionTemplate.executeWithoutResult(status -> IntStream.range(0, rows).forEach(i ->
+                jdbcTemplate.queryForObject("""
+                        INSERT INTO webhook_delivery_logs_identity
+                            (webhook_id, event, success, http_status_code, response_body, attempt_number, duration_ms, created_at)
+                        VALUES (?, ?, ?, ?, ?, ?, ?, ?) RETURNING id
+                        """, Long.class,
+                        1L, "tip.created", true, 200, "ok", 1, 5L, Timestamp.from(Instant.now()))));
+    }
+
+    private void insertDeliveryLogsWithSequence(int rows) {
+        List<WebhookDeliveryLog> logs = IntStream.range(0, rows)
+                .mapToObj(i -> WebhookDeliveryLog.builder()
+                        .webhookId(1L)
+                        .event("tip.created")
+                        .success(true)
+                        .httpStatusCode(200)
+                        .responseBody("ok")
+                        .attemptNumber(1)
+                        .durationMs(5L)
+                        .build())
+                .toList();
+        transactionTemplate.executeWithoutResult(status -> deliveryLogRepository.saveAll(logs));
+    }
+
+    private long time(Runnable runnable) {
+        long start = System.nanoTime();
+        runnable.run();
+        return System.nanoTime() - start;
+    }
+
+    private void report(String table, long identityNanos, long sequenceNanos) {
+        System.out.printf("%n%s insert throughput (%d rows)%n", table, ROWS);
+        System.out.printf("  identity, row at a time : %8.0f rows/s%n", ROWS / (identityNanos / 1e9));
+        System.out.printf("  pooled sequence, batched: %8.0f rows/s%n", ROWS / (sequenceNanos / 1e9));
+        System.out.printf("  speedup                 : %8.1fx%n", (double) identityNanos / sequenceNanos);
+    }
+}
@@ -0,0 +1,273 @@
+package com.mchekin.tipcurrent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mchekin.tipcurrent.domain.Tip;
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.RoomLiveStats;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.OutboxEventRepository;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.service.LiveRoomStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "tipcurrent.stats.live.publish-interval-ms=500"
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class LiveRoomStatsIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+
+    @Autowired
+    private LiveRoomStats liveRoomStats;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicLong relayedIds = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAll();
+        liveRoomStats.clear();
+    }
+
+    @Test
+    void shouldSendCurrentTotalsToNewSubscriber() throws Exception {
+        createTip("overlay_room", "alice", "10.00");
+        createTip("overlay_room", "alice", "5.50");
+        createTip("overlay_room", "bob", "20.00");
+        awaitRelayed();
+
+        Subscription subscription = subscribe("overlay_room");
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !subscription.frames().isEmpty());
+        JsonNode stats = subscription.frames().getLast();
+        assertThat(stats.get("roomId").asText()).isEqualTo("overlay_room");
+        assertThat(stats.get("totalTips").asLong()).isEqualTo(3);
+        assertThat(stats.get("totalAmount").decimalValue()).isEqualByComparingTo("35.50");
+        assertThat(stats.get("uniqueSenders").asLong()).isEqualTo(2);
+
+        subscription.session().disconnect();
+    }
+
+    @Test
+    void shouldPushChangedTotalsAtMostOncePerInterval() throws Exception {
+        Subscription subscription = subscribe("busy_room");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> subscription.frames().size() == 1);
+        assertThat(subscription.frames().getFirst().get("totalTips").asLong()).isZero();
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            createTip("busy_room", "sender_" + (i % 4), "1.00");
+        }
+        long elapsedIntervals = (System.currentTimeMillis() - start) / 500 + 1;
+
+        await().atMost(10, TimeUnit.SECONDS).until(() ->
+                subscription.frames().getLast().get("totalTips").asLong() == 20);
+        JsonNode stats = subscription.frames().getLast();
+        assertThat(stats.get("totalAmount").decimalValue()).isEqualByComparingTo("20.00");
+        assertThat(stats.get("uniqueSenders").asLong()).isEqualTo(4);
+        assertThat(subscription.frames().size() - 1).isLessThanOrEqualTo((int) elapsedIntervals + 1);
+
+        // Nothing changed, so nothing more is pushed
+        int pushed = subscription.frames().size();
+        Thread.sleep(1500);
+        assertThat(subscription.frames()).hasSize(pushed);
+
+        subscription.session().disconnect();
+    }
+
+    @Test
+    void shouldSeedTotalsFromDatabaseOnFirstRead() {
+        tipRepository.saveAll(List.of(
+                tip("restored_room", "alice", "10.00", Instant.now().minus(2, ChronoUnit.HOURS)),
+                tip("restored_room", "bob", "2.25", Instant.now().minus(1, ChronoUnit.HOURS)),
+                tip("restored_room", "alice", "7.75", Instant.now()),
+                tip("other_room", "carol", "1.00", Instant.now())));
+
+        RoomLiveStats stats = liveRoomStats.get("restored_room");
+        assertThat(stats.getTotalTips()).isEqualTo(3);
+        assertThat(stats.getTotalAmount()).isEqualByComparingTo("20.00");
+        assertThat(stats.getUniqueSenders()).isEqualTo(2);
+        assertThat(liveRoomStats.get("other_room").getTotalTips()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotCountSeededTipsAgainWhenTheyAreRelayed() {
+        List<Tip> saved = tipRepository.saveAll(List.of(
+                tip("seeded_room", "alice", "10.00", Instant.now().minus(2, ChronoUnit.HOURS)),
+                tip("seeded_room", "bob", "5.00", Instant.now())));
+        // Relayed before the room is seeded, so the seed counts them
+        Long relayedBeforeSeed = relayXid();
+        assertThat(liveRoomStats.get("seeded_room").getTotalTips()).isEqualTo(2);
+
+        liveRoomStats.addAll(saved.stream().map(TipResponse::from).toList(), relayedBeforeSeed);
+        liveRoomStats.addAll(List.of(relayed("seeded_room", "carol", "1.00")), relayXid());
+
+        RoomLiveStats stats = liveRoomStats.get("seeded_room");
+        assertThat(stats.getTotalTips()).isEqualTo(3);
+        assertThat(stats.getTotalAmount()).isEqualByComparingTo("16.00");
+        assertThat(stats.getUniqueSenders()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldCountEachCreatedTipOnce() throws Exception {
+        assertThat(liveRoomStats.get("counted_room").getTotalTips()).isZero();
+
+        createTip("counted_room", "alice", "10.00");
+        createTip("counted_room", "bob", "2.50");
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> liveRoomStats.get("counted_room").getTotalTips() == 2);
+        // The relay has drained the outbox; nothing else counts the tips
+        await().atMost(10, TimeUnit.SECONDS).until(() -> outboxRepository.count() == 0);
+        Thread.sleep(500);
+        assertThat(liveRoomStats.get("counted_room").getTotalAmount()).isEqualByComparingTo("12.50");
+        assertThat(liveRoomStats.get("counted_room").getTotalTips()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCountTipsRelayedByOtherNodes() {
+        createTip("shared_room", "alice", "10.00");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> liveRoomStats.get("shared_room").getTotalTips() == 1);
+
+        liveRoomStats.addAll(List.of(
+                relayed("shared_room", "bob", "4.10"),
+                relayed("shared_room", "alice", "1.00"),
+                relayed("shared_room", "carol", "2.00")), relayXid());
+
+        RoomLiveStats stats = liveRoomStats.get("shared_room");
+        assertThat(stats.getTotalTips()).isEqualTo(4);
+        assertThat(stats.getTotalAmount()).isEqualByComparingTo("17.10");
+        assertThat(stats.getUniqueSenders()).isEqualTo(3);
+    }
+
+    @SuppressWarnings("deprecation") // MappingJackson2MessageConverter deprecated but no replacement yet in Spring Boot 4.0.1
+    private Subscription subscribe(String roomId) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+
+        StompSession session = stompClient
+                .connectAsync(String.format("ws://localhost:%d/ws", port), new StompSessionHandlerAdapter() {})
+                .get(10, TimeUnit.SECONDS);
+
+        List<JsonNode> frames = new CopyOnWriteArrayList<>();
+        session.subscribe("/topic/rooms/" + roomId + "/stats", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return JsonNode.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                frames.add((JsonNode) payload);
+            }
+        });
+        return new Subscription(session, frames);
+    }
+
+    private void createTip(String roomId, String senderId, String amount) {
+        CreateTipRequest request = CreateTipRequest.builder()
+                .roomId(roomId)
+                .senderId(senderId)
+                .recipientId("streamer")
+                .amount(new BigDecimal(amount))
+                .build();
+        restTemplate.postForEntity(createUrl("/api/tips"), request, TipResponse.class);
+    }
+
+    private Tip tip(String roomId, String senderId, String amount, Instant createdAt) {
+        return Tip.builder()
+                .roomId(roomId)
+                .senderId(senderId)
+                .recipientId("streamer")
+                .amount(new BigDecimal(amount))
+                .createdAt(createdAt.truncatedTo(ChronoUnit.MICROS))
+                .build();
+    }
+
+    // A tip created and relayed by another node, never seen by this one
+    private TipResponse relayed(String roomId, String senderId, String amount) {
+        return TipResponse.builder()
+                .id(relayedIds.decrementAndGet())
+                .roomId(roomId)
+                .senderId(senderId)
+                .amount(new BigDecimal(amount))
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    // A seed leaves out tips still in the outbox; they count once relayed
+    private void awaitRelayed() {
+        await().atMost(10, TimeUnit.SECONDS).until(() -> outboxRepository.count() == 0);
+    }
+
+    // The id of a transaction that has committed, as a relay's has by the time its tips are counted
+    private Long relayXid() {
+        return jdbcTemplate.queryForObject("SELECT pg_current_xact_id()::text::bigint", Long.class);
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+
+    private record Subscription(StompSession session, List<JsonNode> frames) {
+    }
+}
@@ -0,0 +1,223 @@
+package com.mchekin.tipcurrent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mchekin.tipcurrent.domain.OutboxEvent;
+import com.mchekin.tipcurrent.dto.BatchTipRequest;
+import com.mchekin.tipcurrent.dto.BatchTipResult;
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.IdempotencyRecordRepository;
+import com.mchekin.tipcurrent.repository.OutboxEventRepository;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.service.IdempotencyCache;
+import com.mchekin.tipcurrent.service.OutboxRelay;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * The relay thread is disabled so each test decides when the outbox is drained.
+ */
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "tipcurrent.outbox.relay.enabled=false"
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class OutboxIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRepository;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAll();
+        idempotencyRepository.deleteAll();
+        idempotencyCache.clear();
+        outboxRepository.deleteAll();
+    }
+
+    @Test
+    void shouldWriteEventWithTipAndDispatchItOnRelay() throws Exception {
+        List<TipResponse> received = new CopyOnWriteArrayList<>();
+        StompSession session = subscribe("outbox_room", received);
+
+        ResponseEntity<TipResponse> response = restTemplate.postForEntity(
+                createUrl("/api/tips"),
+                tipRequest("outbox_room", "10.00"),
+                TipResponse.class
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        List<OutboxEvent> pending = outboxRepository.findAll();
+        assertThat(pending).hasSize(1);
+        assertThat(pending.getFirst().getRoomId()).isEqualTo("outbox_room");
+        assertThat(pending.getFirst().getEvent()).isEqualTo("tip.created");
+        assertThat(pending.getFirst().getPayloadType()).isEqualTo(OutboxEvent.PayloadType.TIP);
+
+        // Nothing is broadcast until the relay runs
+        Thread.sleep(500);
+        assertThat(received).isEmpty();
+
+        assertThat(outboxRelay.relayBatch()).isEqualTo(1);
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !received.isEmpty());
+        assertThat(received.getFirst().getId()).isEqualTo(response.getBody().getId());
+        assertThat(outboxRepository.count()).isZero();
+
+        session.disconnect();
+    }
+
+    @Test
+    void shouldWriteOneEventPerRoomForBatch() {
+        List<BatchTipRequest> requests = List.of(
+                BatchTipRequest.builder().tip(tipRequest("room1", "10.00")).build(),
+                BatchTipRequest.builder().tip(tipRequest("room2", "20.00")).build(),
+                BatchTipRequest.builder().tip(tipRequest("room1", "30.00")).build()
+        );
+
+        restTemplate.postForEntity(createUrl("/api/tips/batch"), requests, BatchTipResult[].class);
+
+        assertThat(outboxRepository.findAll())
+                .extracting(OutboxEvent::getRoomId, OutboxEvent::getPayloadType)
+                .containsExactlyInAnyOrder(
+                        tuple("room1", OutboxEvent.PayloadType.ROOM_TIP_BATCH),
+                        tuple("room2", OutboxEvent.PayloadType.ROOM_TIP_BATCH));
+    }
+
+    @Test
+    void shouldNotWriteEventForReplayedTip() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Idempotency-Key", "outbox-key");
+        HttpEntity<CreateTipRequest> request = new HttpEntity<>(tipRequest("room1", "10.00"), headers);
+
+        restTemplate.postForEntity(createUrl("/api/tips"), request, TipResponse.class);
+        ResponseEntity<TipResponse> replay = restTemplate.postForEntity(createUrl("/api/tips"), request, TipResponse.class);
+
+        assertThat(replay.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(outboxRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotWriteEventWhenTipIsRolledBack() {
+        List<BatchTipRequest> requests = List.of(
+                BatchTipRequest.builder().tip(tipRequest("room1", "10.00")).build(),
+                BatchTipRequest.builder().idempotencyKey("key-1").tip(tipRequest("room1", "10.00")).build(),
+                BatchTipRequest.builder().idempotencyKey("key-1").tip(tipRequest("room1", "50.00")).build()
+        );
+
+        ResponseEntity<String> response = restTemplate.postForEntity(createUrl("/api/tips/batch"), requests, String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_CONTENT);
+        assertThat(tipRepository.count()).isZero();
+        assertThat(outboxRepository.count()).isZero();
+    }
+
+    @SuppressWarnings("deprecation") // MappingJackson2MessageConverter deprecated but no replacement yet in Spring Boot 4.0.1
+    private StompSession subscribe(String roomId, List<TipResponse> received) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+
+        MappingJackson2MessageConverter messageConverter = new MappingJackson2MessageConverter();
+        messageConverter.setObjectMapper(objectMapper);
+        stompClient.setMessageConverter(messageConverter);
+
+        StompSession session = stompClient
+                .connectAsync(String.format("ws://localhost:%d/ws", port), new StompSessionHandlerAdapter() {})
+                .get(10, TimeUnit.SECONDS);
+
+        session.subscribe("/topic/rooms/" + roomId, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return TipResponse.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((TipResponse) payload);
+            }
+        });
+
+        // Give subscription time to be fully registered
+        Thread.sleep(2000);
+        return session;
+    }
+
+    private CreateTipRequest tipRequest(String roomId, String amount) {
+        return CreateTipRequest.builder()
+                .roomId(roomId)
+                .senderId("alice")
+                .recipientId("streamer")
+                .amount(new BigDecimal(amount))
+                .build();
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
@@ -0,0 +1,200 @@
+package com.mchekin.tipcurrent;
+
+import com.mchekin.tipcurrent.config.ReplicaDataSource;
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.TipPageResponse;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against two Postgres instances, the second standing in for a read replica. It is not
+ * replicating, so a row written to only one of them shows which instance served a request.
+ * Health checks are driven by the tests rather than the schedule.
+ */
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "tipcurrent.datasource.replicas.health-check-interval-ms=3600000"
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class ReadReplicaIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @Container
+    static PostgreSQLContainer<?> replica = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_replica")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("tipcurrent.datasource.replicas.urls", replica::getJdbcUrl);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private ReplicaDataSource replicaDataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final JdbcTemplate replicaJdbc = new JdbcTemplate(
+            new DriverManagerDataSource(replica.getJdbcUrl(), replica.getUsername(), replica.getPassword()));
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAllInBatch();
+        replicaJdbc.execute("""
+                CREATE TABLE IF NOT EXISTS tips (
+                    id BIGINT PRIMARY KEY,
+                    room_id VARCHAR(255) NOT NULL,
+                    sender_id VARCHAR(255) NOT NULL,
+                    recipient_id VARCHAR(255) NOT NULL,
+                    amount NUMERIC(19, 2) NOT NULL,
+                    message VARCHAR(1000),
+                    metadata TEXT,
+                    created_at TIMESTAMPTZ NOT NULL
+                )
+                """);
+        replicaJdbc.execute("TRUNCATE tips");
+        replicaDataSource.checkHealth();
+    }
+
+    @AfterEach
+    void tearDown() {
+        setReplicaAcceptsConnections(true);
+    }
+
+    @Test
+    void shouldServeReadOnlyRequestsFromReplica() {
+        insertReplicaTip(9001L, "replica-sender");
+
+        ResponseEntity<TipPageResponse> page = restTemplate.getForEntity(
+                createUrl("/api/tips?senderId=replica-sender"), TipPageResponse.class);
+        ResponseEntity<TipResponse> tip = restTemplate.getForEntity(
+                createUrl("/api/tips/9001"), TipResponse.class);
+
+        assertThat(replicaDataSource.anyHealthy()).isTrue();
+        assertThat(page.getBody().getContent()).extracting(TipResponse::getId).containsExactly(9001L);
+        assertThat(tip.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(tip.getBody().getSenderId()).isEqualTo("replica-sender");
+    }
+
+    @Test
+    void shouldSendWritesToPrimary() {
+        ResponseEntity<TipResponse> created = restTemplate.postForEntity(
+                createUrl("/api/tips"), tipRequest("writer"), TipResponse.class);
+
+        assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        // Outside a transaction, so this count runs on the primary
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tips", Long.class)).isEqualTo(1);
+        assertThat(replicaJdbc.queryForObject("SELECT COUNT(*) FROM tips", Long.class)).isZero();
+
+        // The replica has not seen the write, so reading it back finds nothing
+        ResponseEntity<TipResponse> readBack = restTemplate.getForEntity(
+                createUrl("/api/tips/" + created.getBody().getId()), TipResponse.class);
+        assertThat(readBack.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void shouldFallBackToPrimaryWhileReplicaIsUnavailable() {
+        insertReplicaTip(9002L, "writer");
+        restTemplate.postForEntity(createUrl("/api/tips"), tipRequest("writer"), TipResponse.class);
+
+        setReplicaAcceptsConnections(false);
+        replicaDataSource.checkHealth();
+
+        ResponseEntity<TipPageResponse> fromPrimary = restTemplate.getForEntity(
+                createUrl("/api/tips?senderId=writer"), TipPageResponse.class);
+
+        assertThat(replicaDataSource.anyHealthy()).isFalse();
+        assertThat(fromPrimary.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(fromPrimary.getBody().getContent()).extracting(TipResponse::getId).doesNotContain(9002L);
+        assertThat(fromPrimary.getBody().getContent()).hasSize(1);
+
+        setReplicaAcceptsConnections(true);
+        replicaDataSource.checkHealth();
+
+        ResponseEntity<TipPageResponse> fromReplica = restTemplate.getForEntity(
+                createUrl("/api/tips?senderId=writer"), TipPageResponse.class);
+
+        assertThat(replicaDataSource.anyHealthy()).isTrue();
+        assertThat(fromReplica.getBody().getContent()).extracting(TipResponse::getId).containsExactly(9002L);
+    }
+
+    private void setReplicaAcceptsConnections(boolean allow) {
+        URI uri = URI.create(replica.getJdbcUrl().substring("jdbc:".length()));
+        String database = uri.getPath().substring(1);
+        String adminUrl = "jdbc:postgresql://" + uri.getHost() + ":" + uri.getPort() + "/postgres";
+        JdbcTemplate admin = new JdbcTemplate(
+                new DriverManagerDataSource(adminUrl, replica.getUsername(), replica.getPassword()));
+
+        admin.execute("ALTER DATABASE " + database + " WITH ALLOW_CONNECTIONS " + allow);
+        if (!allow) {
+            admin.execute("SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE datname = '" + database + "'");
+        }
+    }
+
+    private void insertReplicaTip(long id, String senderId) {
+        replicaJdbc.update("""
+                INSERT INTO tips (id, room_id, sender_id, recipient_id, amount, message, created_at)
+                VALUES (?, 'room1', ?, 'recipient', 10.00, 'From the replica', ?)
+                """, id, senderId, Timestamp.from(Instant.now().truncatedTo(ChronoUnit.MICROS)));
+    }
+
+    private CreateTipRequest tipRequest(String senderId) {
+        return CreateTipRequest.builder()
+                .roomId("room1")
+                .senderId(senderId)
+                .recipientId("recipient")
+                .amount(new BigDecimal("25.00"))
+                .message("From the primary")
+                .build();
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
@@ -0,0 +1,170 @@
+package com.mchekin.tipcurrent;
+
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.TipPageResponse;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.service.RecentTipsCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "tipcurrent.feed.recent-tips.capacity=5",
+        "tipcurrent.feed.recent-tips.idle-seconds=2"
+    }
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class RecentTipsIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private RecentTipsCache recentTipsCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAll();
+        recentTipsCache.clear();
+    }
+
+    @Test
+    void shouldServeFirstPageFromMemoryAfterFirstRead() {
+        for (int i = 0; i < 8; i++) {
+            createTip("room1", "sender" + i);
+        }
+        double hitsBefore = meterRegistry.counter("tipcurrent.feed.recent-tips", "result", "hit").count();
+
+        TipPageResponse first = getPage("/api/tips?roomId=room1&size=3");
+        // Bypasses the write path, so only a query would see it
+        insertDirectly("room1", "ghost");
+        TipPageResponse second = getPage("/api/tips?roomId=room1&size=3");
+
+        assertThat(second.getContent()).extracting(TipResponse::getSenderId)
+                .containsExactly("sender7", "sender6", "sender5")
+                .isEqualTo(first.getContent().stream().map(TipResponse::getSenderId).toList());
+        assertThat(meterRegistry.counter("tipcurrent.feed.recent-tips", "result", "hit").count())
+                .isEqualTo(hitsBefore + 2);
+
+        // Deeper pages continue from the database
+        TipPageResponse next = getPage("/api/tips?roomId=room1&size=3&cursor=" + second.getNext());
+        assertThat(next.getContent()).extracting(TipResponse::getSenderId)
+                .containsExactly("sender4", "sender3", "sender2");
+    }
+
+    @Test
+    void shouldAddCreatedTipsToBufferedRoom() {
+        createTip("room1", "alice");
+        getPage("/api/tips?roomId=room1&size=3");
+
+        createTip("room1", "bob");
+        createTip("room2", "carol");
+
+        TipPageResponse page = getPage("/api/tips?roomId=room1&size=3");
+        assertThat(page.getContent()).extracting(TipResponse::getSenderId).containsExactly("bob", "alice");
+        assertThat(page.getNext()).isNull();
+    }
+
+    @Test
+    void shouldPageThroughRoomLargerThanBuffer() {
+        for (int i = 0; i < 12; i++) {
+            createTip("room1", "sender" + i);
+        }
+
+        List<String> senders = new ArrayList<>();
+        String cursor = null;
+        do {
+            TipPageResponse page = getPage("/api/tips?roomId=room1&size=4" + (cursor == null ? "" : "&cursor=" + cursor));
+            page.getContent().forEach(tip -> senders.add(tip.getSenderId()));
+            cursor = page.getNext();
+        } while (cursor != null);
+
+        assertThat(senders).hasSize(12).doesNotHaveDuplicates();
+        assertThat(senders.getFirst()).isEqualTo("sender11");
+        assertThat(senders.getLast()).isEqualTo("sender0");
+    }
+
+    @Test
+    void shouldReloadRoomAfterIdleEviction() throws Exception {
+        createTip("room1", "alice");
+        getPage("/api/tips?roomId=room1");
+        insertDirectly("room1", "ghost");
+
+        Thread.sleep(3000);
+
+        assertThat(getPage("/api/tips?roomId=room1&size=3").getContent())
+                .extracting(TipResponse::getSenderId)
+                .contains("ghost", "alice");
+    }
+
+    private void createTip(String roomId, String senderId) {
+        restTemplate.postForEntity(createUrl("/api/tips"), CreateTipRequest.builder()
+                .roomId(roomId)
+                .senderId(senderId)
+                .recipientId("streamer")
+                .amount(new BigDecimal("10.00"))
+                .build(), TipResponse.class);
+    }
+
+    private void insertDirectly(String roomId, String senderId) {
+        jdbcTemplate.update("""
+                INSERT INTO tips (room_id, sender_id, recipient_id, amount, created_at)
+                VALUES (?, ?, 'streamer', 10.00, now())
+                """, roomId, senderId);
+    }
+
+    private TipPageResponse getPage(String path) {
+        return restTemplate.getForEntity(createUrl(path), TipPageResponse.class).getBody();
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
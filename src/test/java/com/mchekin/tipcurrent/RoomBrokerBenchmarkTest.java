@@ -0,0 +1,178 @@
+package com.mchekin.tipcurrent;
+
+import com.mchekin.tipcurrent.broadcast.RoomAudience;
+import com.mchekin.tipcurrent.broadcast.RoomBroker;
+import com.mchekin.tipcurrent.broadcast.RoomReplayLog;
+import com.mchekin.tipcurrent.broadcast.SlowConsumerPolicy;
+import com.mchekin.tipcurrent.broadcast.SlowConsumers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.MimeTypeUtils;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the time from publishing one tip to a room with 50,000 subscribers until every
+ * subscriber's copy has been STOMP-encoded on the outbound channel. Compares Spring's simple
+ * broker with the {@link RoomBroker} fanning out on its shard thread alone and split across
+ * fan-out workers. No Spring context or WebSocket sessions are involved; the outbound channel is
+ * executor-backed like the real {@code clientOutboundChannel}.
+ * Run with {@code ./mvnw test -Dtest=RoomBrokerBenchmarkTest -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class RoomBrokerBenchmarkTest {
+
+    private static final int SUBSCRIBERS = 50_000;
+    private static final String ROOM = "/topic/rooms/benchmark";
+    private static final int WARMUP_MESSAGES = 10;
+    private static final int MESSAGES = 30;
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+    private static final byte[] PAYLOAD = """
+            {"id":1,"roomId":"benchmark","senderId":"alice","recipientId":"bob","amount":100,\
+            "message":"Great stream!","metadata":null,"createdAt":"2026-01-01T12:00:00Z"}\
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private final StompEncoder encoder = new StompEncoder();
+    private final AtomicReference<CountDownLatch> deliveries = new AtomicReference<>(new CountDownLatch(0));
+
+    private ThreadPoolTaskExecutor outboundExecutor;
+    private ExecutorSubscribableChannel clientInboundChannel;
+    private ExecutorSubscribableChannel clientOutboundChannel;
+    private ExecutorSubscribableChannel brokerChannel;
+
+    @BeforeEach
+    void setUp() {
+        // Sized like the executor Spring gives the client outbound channel
+        outboundExecutor = new ThreadPoolTaskExecutor();
+        outboundExecutor.setCorePoolSize(PROCESSORS * 2);
+        outboundExecutor.setMaxPoolSize(PROCESSORS * 2);
+        outboundExecutor.setThreadNamePrefix("outbound-");
+        outboundExecutor.initialize();
+
+        clientInboundChannel = new ExecutorSubscribableChannel();
+        brokerChannel = new ExecutorSubscribableChannel();
+        clientOutboundChannel = new ExecutorSubscribableChannel(outboundExecutor);
+        // Stands in for the per-session STOMP encoding done before a frame is written to its socket
+        clientOutboundChannel.subscribe(message -> {
+            MessageHeaders headers = message.getHeaders();
+            if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+                return;
+            }
+            StompHeaderAccessor frame = StompHeaderAccessor.create(StompCommand.MESSAGE);
+            frame.setSubscriptionId(SimpMessageHeaderAccessor.getSubscriptionId(headers));
+            frame.setDestination(SimpMessageHeaderAccessor.getDestination(headers));
+            frame.setMessageId(SimpMessageHeaderAccessor.getSessionId(headers));
+            frame.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            encoder.encode(frame.getMessageHeaders(), (byte[]) message.getPayload());
+            deliveries.get().countDown();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        outboundExecutor.shutdown();
+    }
+
+    @Test
+    void benchmarkFanOutTo50kSubscribers() throws Exception {
+        System.out.printf("%nFan-out of one tip to %,d subscribers (%d processors)%n", SUBSCRIBERS, PROCESSORS);
+        run("simple broker", () -> new SimpleBrokerMessageHandler(
+                clientInboundChannel, clientOutboundChannel, brokerChannel, List.of("/topic")));
+        run("room broker, shard thread only", () -> roomBroker(Integer.MAX_VALUE));
+        run("room broker, parallel fan-out", () -> roomBroker(1_000));
+    }
+
+    private RoomBroker roomBroker(int parallelThreshold) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RoomReplayLog replayLog =
+                new RoomReplayLog((roomId, from, limit) -> List.of(), JsonMapper.shared(), meterRegistry, 500, 10_000, 1000, 10_000);
+        return new RoomBroker(clientInboundChannel, clientOutboundChannel, brokerChannel,
+                meterRegistry, JsonMapper.shared(), new SlowConsumers(SlowConsumerPolicy.DISCONNECT, meterRegistry),
+                replayLog, new RoomAudience(PROCESSORS, replayLog, meterRegistry, 60_000),
+                new RoomBroker.Settings(PROCESSORS, PROCESSORS, parallelThreshold, 0, 5000, 0, 100));
+    }
+
+    private void run(String label, Supplier<AbstractBrokerMessageHandler> factory) throws Exception {
+        AbstractBrokerMessageHandler broker = factory.get();
+        broker.start();
+        try {
+            for (int i = 0; i < SUBSCRIBERS; i++) {
+                broker.handleMessage(connect("session-" + i));
+                broker.handleMessage(subscribe("session-" + i));
+            }
+
+            for (int i = 0; i < WARMUP_MESSAGES; i++) {
+                publishAndAwait(broker);
+            }
+            long[] latencies = new long[MESSAGES];
+            for (int i = 0; i < MESSAGES; i++) {
+                latencies[i] = publishAndAwait(broker);
+            }
+            Arrays.sort(latencies);
+            System.out.printf("  %-32s p50 %6.1f ms   p90 %6.1f ms   max %6.1f ms%n", label,
+                    latencies[MESSAGES / 2] / 1e6,
+                    latencies[MESSAGES * 9 / 10] / 1e6,
+                    latencies[MESSAGES - 1] / 1e6);
+        } finally {
+            broker.stop();
+        }
+    }
+
+    private long publishAndAwait(AbstractBrokerMessageHandler broker) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(SUBSCRIBERS);
+        deliveries.set(latch);
+        long start = System.nanoTime();
+        broker.handleMessage(publish());
+        assertThat(latch.await(60, TimeUnit.SECONDS))
+                .as("every subscriber receives the tip")
+                .isTrue();
+        return System.nanoTime() - start;
+    }
+
+    // The simple broker only delivers to sessions it saw connect
+    private static Message<byte[]> connect(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> subscribe(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination(ROOM);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> publish() {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(ROOM);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(PAYLOAD, accessor.getMessageHeaders());
+    }
+}
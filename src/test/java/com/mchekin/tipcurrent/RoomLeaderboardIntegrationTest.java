@@ -0,0 +1,264 @@
+package com.mchekin.tipcurrent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mchekin.tipcurrent.domain.Tip;
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.LeaderboardEntry;
+import com.mchekin.tipcurrent.dto.RoomLeaderboardResponse;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.OutboxEventRepository;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.service.RoomLeaderboards;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Leaderboards show the top 3 and track 5 senders per room, so a handful of senders is enough to
+ * push a room past what it tracks.
+ */
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "tipcurrent.leaderboard.size=3",
+        "tipcurrent.leaderboard.tracked-senders=5",
+        "tipcurrent.leaderboard.publish-interval-ms=500"
+    }
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class RoomLeaderboardIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+
+    @Autowired
+    private RoomLeaderboards roomLeaderboards;
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAll();
+        roomLeaderboards.clear();
+    }
+
+    @Test
+    void shouldRankTopSendersByTotalAmount() {
+        createTip("ranked_room", "alice", "10.00");
+        createTip("ranked_room", "bob", "25.00");
+        createTip("ranked_room", "carol", "5.00");
+        createTip("ranked_room", "alice", "20.00");
+        createTip("ranked_room", "dave", "1.00");
+        awaitRelayed();
+
+        RoomLeaderboardResponse leaderboard = getLeaderboard("ranked_room");
+
+        assertThat(leaderboard.getRoomId()).isEqualTo("ranked_room");
+        assertThat(leaderboard.getEntries()).extracting(LeaderboardEntry::getRank).containsExactly(1, 2, 3);
+        assertThat(leaderboard.getEntries()).extracting(LeaderboardEntry::getSenderId)
+                .containsExactly("alice", "bob", "carol");
+        assertThat(leaderboard.getEntries().getFirst().getAmount()).isEqualByComparingTo("30.00");
+    }
+
+    @Test
+    void shouldReturnEmptyLeaderboardForRoomWithoutTips() {
+        assertThat(getLeaderboard("quiet_room").getEntries()).isEmpty();
+    }
+
+    @Test
+    void shouldPushLeaderboardWhenRankingChanges() throws Exception {
+        createTip("live_room", "alice", "10.00");
+        awaitRelayed();
+        Subscription subscription = subscribe("live_room");
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> subscription.frames().size() == 1);
+        assertThat(senders(subscription.frames().getLast())).containsExactly("alice");
+
+        createTip("live_room", "bob", "50.00");
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> subscription.frames().size() == 2);
+        assertThat(senders(subscription.frames().getLast())).containsExactly("bob", "alice");
+
+        subscription.session().disconnect();
+    }
+
+    @Test
+    void shouldNotPushWhenTipLeavesTopUnchanged() throws Exception {
+        createTip("steady_room", "alice", "30.00");
+        createTip("steady_room", "bob", "20.00");
+        createTip("steady_room", "carol", "10.00");
+        awaitRelayed();
+        Subscription subscription = subscribe("steady_room");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> subscription.frames().size() == 1);
+
+        // Fourth place does not show on a board of three
+        createTip("steady_room", "dave", "1.00");
+        Thread.sleep(1500);
+        assertThat(subscription.frames()).hasSize(1);
+
+        subscription.session().disconnect();
+    }
+
+    @Test
+    void shouldKeepHeavyTippersOnceRoomHasMoreSendersThanTracked() {
+        createTip("crowded_room", "whale", "1000.00");
+        createTip("crowded_room", "dolphin", "500.00");
+        for (int i = 0; i < 50; i++) {
+            createTip("crowded_room", "minnow_" + i, "1.00");
+        }
+        createTip("crowded_room", "dolphin", "100.00");
+        awaitRelayed();
+
+        List<LeaderboardEntry> entries = getLeaderboard("crowded_room").getEntries();
+
+        assertThat(entries).extracting(LeaderboardEntry::getSenderId).startsWith("whale", "dolphin");
+        assertThat(entries.get(0).getAmount()).isEqualByComparingTo("1000.00");
+        assertThat(entries.get(1).getAmount()).isEqualByComparingTo("600.00");
+        // A minnow that came in by evicting another is credited with at most what it could have tipped
+        assertThat(entries.get(2).getAmount()).isLessThanOrEqualTo(new BigDecimal("50.00"));
+    }
+
+    @Test
+    void shouldSeedLeaderboardFromDatabaseOnFirstRead() {
+        tipRepository.saveAll(List.of(
+                tip("restored_room", "alice", "10.00", Instant.now().minus(2, ChronoUnit.HOURS)),
+                tip("restored_room", "bob", "40.00", Instant.now().minus(1, ChronoUnit.HOURS)),
+                tip("restored_room", "alice", "35.00", Instant.now()),
+                tip("restored_room", "carol", "1.00", Instant.now())));
+
+        List<LeaderboardEntry> entries = getLeaderboard("restored_room").getEntries();
+        assertThat(entries).extracting(LeaderboardEntry::getSenderId).containsExactly("alice", "bob", "carol");
+        assertThat(entries.getFirst().getAmount()).isEqualByComparingTo("45.00");
+    }
+
+    @Test
+    void shouldCountEachCreatedTipOnce() throws Exception {
+        assertThat(getLeaderboard("counted_room").getEntries()).isEmpty();
+
+        createTip("counted_room", "alice", "10.00");
+        createTip("counted_room", "alice", "2.50");
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !getLeaderboard("counted_room").getEntries().isEmpty()
+                && getLeaderboard("counted_room").getEntries().getFirst().getAmount().compareTo(new BigDecimal("12.50")) == 0);
+        // The relay has drained the outbox; nothing else counts the tips
+        await().atMost(10, TimeUnit.SECONDS).until(() -> outboxRepository.count() == 0);
+        Thread.sleep(500);
+        assertThat(getLeaderboard("counted_room").getEntries().getFirst().getAmount()).isEqualByComparingTo("12.50");
+    }
+
+    // A seed leaves out tips still in the outbox; they count once relayed
+    private void awaitRelayed() {
+        await().atMost(10, TimeUnit.SECONDS).until(() -> outboxRepository.count() == 0);
+    }
+
+    private RoomLeaderboardResponse getLeaderboard(String roomId) {
+        return restTemplate.getForObject(createUrl("/api/rooms/" + roomId + "/leaderboard"), RoomLeaderboardResponse.class);
+    }
+
+    private List<String> senders(JsonNode leaderboard) {
+        List<String> senders = new ArrayList<>();
+        leaderboard.get("entries").forEach(entry -> senders.add(entry.get("senderId").asText()));
+        return senders;
+    }
+
+    @SuppressWarnings("deprecation") // MappingJackson2MessageConverter deprecated but no replacement yet in Spring Boot 4.0.1
+    private Subscription subscribe(String roomId) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+
+        StompSession session = stompClient
+                .connectAsync(String.format("ws://localhost:%d/ws", port), new StompSessionHandlerAdapter() {})
+                .get(10, TimeUnit.SECONDS);
+
+        List<JsonNode> frames = new CopyOnWriteArrayList<>();
+        session.subscribe("/topic/rooms/" + roomId + "/leaderboard", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return JsonNode.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                frames.add((JsonNode) payload);
+            }
+        });
+        return new Subscription(session, frames);
+    }
+
+    private void createTip(String roomId, String senderId, String amount) {
+        CreateTipRequest request = CreateTipRequest.builder()
+                .roomId(roomId)
+                .senderId(senderId)
+                .recipientId("streamer")
+                .amount(new BigDecimal(amount))
+                .build();
+        restTemplate.postForEntity(createUrl("/api/tips"), request, TipResponse.class);
+    }
+
+    private Tip tip(String roomId, String senderId, String amount, Instant createdAt) {
+        return Tip.builder()
+                .roomId(roomId)
+                .senderId(senderId)
+                .recipientId("streamer")
+                .amount(new BigDecimal(amount))
+                .createdAt(createdAt.truncatedTo(ChronoUnit.MICROS))
+                .build();
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+
+    private record Subscription(StompSession session, List<JsonNode> frames) {
+    }
+}
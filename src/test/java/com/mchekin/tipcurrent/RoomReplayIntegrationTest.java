@@ -0,0 +1,195 @@
+package com.mchekin.tipcurrent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "tipcurrent.broadcast.replay.log-size=3"
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class RoomReplayIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAll();
+    }
+
+    @Test
+    void shouldNumberRoomMessagesInIncreasingOrder() throws Exception {
+        Subscription subscription = subscribe("seq_room", null);
+
+        createTip("seq_room", "alice");
+        createTip("seq_room", "bob");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> subscription.frames.size() == 2);
+
+        assertThat(subscription.frames.get(0).seq()).isPositive();
+        assertThat(subscription.frames.get(1).seq()).isGreaterThan(subscription.frames.get(0).seq());
+
+        subscription.session.disconnect();
+    }
+
+    @Test
+    void shouldReplayMissedTipsFromLog() throws Exception {
+        Subscription first = subscribe("log_room", null);
+        createTip("log_room", "alice");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> first.frames.size() == 1);
+        long lastSeq = first.frames.getFirst().seq();
+        first.session.disconnect();
+
+        // Broadcast while the client is away
+        createTip("log_room", "bob");
+        createTip("log_room", "carol");
+        Thread.sleep(1000);
+
+        Subscription resumed = subscribe("log_room", lastSeq);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> resumed.frames.size() == 2);
+
+        assertThat(resumed.frames).extracting(frame -> frame.body().get("senderId").asText())
+                .containsExactly("bob", "carol");
+        assertThat(resumed.frames.get(0).seq()).isGreaterThan(lastSeq);
+        assertThat(resumed.frames.get(1).seq()).isGreaterThan(resumed.frames.get(0).seq());
+
+        // Live tips follow the replay
+        createTip("log_room", "dave");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> resumed.frames.size() == 3);
+        assertThat(resumed.frames.get(2).body().get("senderId").asText()).isEqualTo("dave");
+
+        resumed.session.disconnect();
+    }
+
+    @Test
+    void shouldReplayFromDatabaseWhenLogNoLongerReachesBack() throws Exception {
+        Subscription first = subscribe("db_room", null);
+        createTip("db_room", "alice");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> first.frames.size() == 1);
+        long lastSeq = first.frames.getFirst().seq();
+        first.session.disconnect();
+
+        // More tips than the log holds
+        for (String sender : List.of("bob", "carol", "dave", "erin")) {
+            createTip("db_room", sender);
+        }
+        Thread.sleep(1000);
+
+        Subscription resumed = subscribe("db_room", lastSeq);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !resumed.frames.isEmpty());
+
+        Frame replay = resumed.frames.getFirst();
+        assertThat(replay.replay()).isEqualTo("database");
+        List<String> senders = new ArrayList<>();
+        replay.body().get("tips").forEach(tip -> senders.add(tip.get("senderId").asText()));
+        // The database replay starts a margin before the last seen tip, so it may repeat it
+        assertThat(senders).containsSubsequence("bob", "carol", "dave", "erin");
+
+        resumed.session.disconnect();
+    }
+
+    @SuppressWarnings("deprecation") // MappingJackson2MessageConverter deprecated but no replacement yet in Spring Boot 4.0.1
+    private Subscription subscribe(String roomId, Long lastSeq) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+
+        StompSession session = stompClient
+                .connectAsync(String.format("ws://localhost:%d/ws", port), new StompSessionHandlerAdapter() {})
+                .get(10, TimeUnit.SECONDS);
+
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination("/topic/rooms/" + roomId);
+        if (lastSeq != null) {
+            headers.add("last-seq", String.valueOf(lastSeq));
+        }
+        List<Frame> frames = new CopyOnWriteArrayList<>();
+        session.subscribe(headers, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return JsonNode.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                String seq = headers.getFirst("seq");
+                frames.add(new Frame(seq == null ? 0 : Long.parseLong(seq), headers.getFirst("replay"), (JsonNode) payload));
+            }
+        });
+
+        // Give subscription time to be fully registered
+        Thread.sleep(1000);
+        return new Subscription(session, frames);
+    }
+
+    private void createTip(String roomId, String senderId) {
+        CreateTipRequest request = CreateTipRequest.builder()
+                .roomId(roomId)
+                .senderId(senderId)
+                .recipientId("streamer")
+                .amount(new BigDecimal("10.00"))
+                .build();
+        restTemplate.postForEntity(createUrl("/api/tips"), request, TipResponse.class);
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+
+    private record Subscription(StompSession session, List<Frame> frames) {
+    }
+
+    private record Frame(long seq, String replay, JsonNode body) {
+    }
+}
@@ -0,0 +1,199 @@
+package com.mchekin.tipcurrent;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.RoomViewersResponse;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Rooms are skipped as soon as nobody watches them, so a broadcast to an empty room is never logged.
+ */
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "tipcurrent.broadcast.skip-unwatched-rooms-after-ms=0"
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class RoomViewersIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAll();
+    }
+
+    @Test
+    void shouldCountViewersAsTheySubscribeAndLeave() throws Exception {
+        assertThat(viewers("viewed_room")).isZero();
+
+        Subscription first = subscribe("viewed_room", null);
+        Subscription second = subscribe("viewed_room", null);
+        subscribe("other_room", null);
+        assertThat(viewers("viewed_room")).isEqualTo(2);
+
+        first.subscription().unsubscribe();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> viewers("viewed_room") == 1);
+
+        second.session().disconnect();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> viewers("viewed_room") == 0);
+        assertThat(viewers("other_room")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldSkipRoomsNobodyWatches() throws Exception {
+        double skippedBefore = skipped();
+        Subscription watched = subscribe("watched_room", null);
+
+        createTip("empty_room", "alice");
+        createTip("watched_room", "bob");
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> watched.frames().size() == 1);
+        assertThat(watched.frames().getFirst().body().get("senderId").asText()).isEqualTo("bob");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> skipped() == skippedBefore + 1);
+
+        watched.session().disconnect();
+    }
+
+    @Test
+    void shouldReplaySkippedTipsFromDatabase() throws Exception {
+        Subscription first = subscribe("resume_room", null);
+        createTip("resume_room", "alice");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> first.frames().size() == 1);
+        long lastSeq = first.frames().getFirst().seq();
+        first.session().disconnect();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> viewers("resume_room") == 0);
+
+        // Nobody watches the room, so this tip is never broadcast or logged
+        createTip("resume_room", "bob");
+        Thread.sleep(1000);
+
+        Subscription resumed = subscribe("resume_room", lastSeq);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !resumed.frames().isEmpty());
+
+        Frame replay = resumed.frames().getFirst();
+        assertThat(replay.replay()).isEqualTo("database");
+        List<String> senders = new ArrayList<>();
+        replay.body().get("tips").forEach(tip -> senders.add(tip.get("senderId").asText()));
+        assertThat(senders).contains("bob");
+
+        resumed.session().disconnect();
+    }
+
+    private int viewers(String roomId) {
+        return restTemplate.getForObject(createUrl("/api/rooms/" + roomId + "/viewers"), RoomViewersResponse.class)
+                .getViewers();
+    }
+
+    private double skipped() {
+        return meterRegistry.get("tipcurrent.broadcast.skipped").counter().count();
+    }
+
+    @SuppressWarnings("deprecation") // MappingJackson2MessageConverter deprecated but no replacement yet in Spring Boot 4.0.1
+    private Subscription subscribe(String roomId, Long lastSeq) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+
+        StompSession session = stompClient
+                .connectAsync(String.format("ws://localhost:%d/ws", port), new StompSessionHandlerAdapter() {})
+                .get(10, TimeUnit.SECONDS);
+
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination("/topic/rooms/" + roomId);
+        if (lastSeq != null) {
+            headers.add("last-seq", String.valueOf(lastSeq));
+        }
+        List<Frame> frames = new CopyOnWriteArrayList<>();
+        StompSession.Subscription subscription = session.subscribe(headers, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return JsonNode.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                String seq = headers.getFirst("seq");
+                frames.add(new Frame(seq == null ? 0 : Long.parseLong(seq), headers.getFirst("replay"), (JsonNode) payload));
+            }
+        });
+
+        // Give subscription time to be fully registered
+        Thread.sleep(1000);
+        return new Subscription(session, subscription, frames);
+    }
+
+    private void createTip(String roomId, String senderId) {
+        CreateTipRequest request = CreateTipRequest.builder()
+                .roomId(roomId)
+                .senderId(senderId)
+                .recipientId("streamer")
+                .amount(new BigDecimal("10.00"))
+                .build();
+        restTemplate.postForEntity(createUrl("/api/tips"), request, TipResponse.class);
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+
+    private record Subscription(StompSession session, StompSession.Subscription subscription, List<Frame> frames) {
+    }
+
+    private record Frame(long seq, String replay, JsonNode body) {
+    }
+}
@@ -0,0 +1,135 @@
+package com.mchekin.tipcurrent;
+
+import com.mchekin.tipcurrent.broadcast.SlowConsumerPolicy;
+import com.mchekin.tipcurrent.broadcast.SlowConsumerWebSocketHandler;
+import com.mchekin.tipcurrent.broadcast.SlowConsumers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives a session whose client stops reading: the first frame blocks in the socket write, and the
+ * frames behind it fill the session's send buffer.
+ */
+class SlowConsumerWebSocketHandlerTest {
+
+    private static final int BUFFER_LIMIT = 1000;
+    private static final TextMessage FRAME = new TextMessage("x".repeat(600));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch clientReads = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        clientReads.countDown();
+    }
+
+    @Test
+    void shouldDisconnectSessionThatFallsBehind() throws Exception {
+        WebSocketSession session = stalledSession(SlowConsumerPolicy.DISCONNECT);
+
+        session.sendMessage(FRAME);
+        assertThatThrownBy(() -> session.sendMessage(FRAME)).isInstanceOf(SessionLimitExceededException.class);
+
+        assertThat(slowConsumers("evicted")).isEqualTo(1);
+        assertThat(slowConsumers("throttled")).isZero();
+    }
+
+    @Test
+    void shouldDropOldestFramesOfSessionThatFallsBehind() throws Exception {
+        WebSocketSession session = stalledSession(SlowConsumerPolicy.DROP_OLDEST);
+
+        session.sendMessage(FRAME);
+        session.sendMessage(FRAME);
+        session.sendMessage(FRAME);
+
+        assertThat(slowConsumers("throttled")).isEqualTo(1);
+        assertThat(slowConsumers("evicted")).isZero();
+    }
+
+    @Test
+    void shouldSwitchSessionToSummariesUntilItCatchesUp() throws Exception {
+        WebSocketSession session = stalledSession(SlowConsumerPolicy.SUMMARY_ONLY);
+
+        session.sendMessage(FRAME);
+        session.sendMessage(FRAME);
+
+        assertThat(slowConsumers("throttled")).isEqualTo(1);
+        assertThat(summaryOnlySessions()).isEqualTo(1);
+
+        clientReads.countDown();
+        // The writer drains the buffer; the next frame finds it empty
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+            session.sendMessage(FRAME);
+            assertThat(summaryOnlySessions()).isZero();
+        });
+    }
+
+    /**
+     * Returns a decorated session with one frame stuck in the socket write on another thread.
+     */
+    private WebSocketSession stalledSession(SlowConsumerPolicy policy) throws Exception {
+        WebSocketSession socket = mock(WebSocketSession.class);
+        when(socket.getId()).thenReturn("session-1");
+        when(socket.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            writing.countDown();
+            clientReads.await();
+            return null;
+        }).when(socket).sendMessage(any());
+
+        SlowConsumers slowConsumers = new SlowConsumers(policy, meterRegistry);
+        DecoratingHandler handler = new DecoratingHandler(slowConsumers);
+        handler.setSendBufferSizeLimit(BUFFER_LIMIT);
+        handler.setSendTimeLimit(60_000);
+        WebSocketSession session = handler.decorate(socket);
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                session.sendMessage(FRAME);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        return session;
+    }
+
+    private double slowConsumers(String outcome) {
+        return meterRegistry.get("tipcurrent.broadcast.slow-consumers").tag("outcome", outcome).counter().count();
+    }
+
+    private double summaryOnlySessions() {
+        return meterRegistry.get("tipcurrent.broadcast.sessions.summary-only").gauge().value();
+    }
+
+    private static class DecoratingHandler extends SlowConsumerWebSocketHandler {
+
+        DecoratingHandler(SlowConsumers slowConsumers) {
+            super(new ExecutorSubscribableChannel(), new ExecutorSubscribableChannel(), slowConsumers);
+        }
+
+        WebSocketSession decorate(WebSocketSession session) {
+            return decorateSession(session);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.mchekin.tipcurrent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mchekin.tipcurrent.dto.BatchTipRequest;
+import com.mchekin.tipcurrent.dto.BatchTipResult;
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.RoomTipBatch;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.IdempotencyRecordRepository;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.service.IdempotencyCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class TipBatchIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRepository;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAll();
+        idempotencyRepository.deleteAll();
+        idempotencyCache.clear();
+    }
+
+    @Test
+    void shouldCreateAllTipsInBatch() {
+        List<BatchTipRequest> requests = List.of(
+                batchItem(null, "room1", "alice", "10.00"),
+                batchItem(null, "room1", "bob", "20.00"),
+                batchItem(null, "room2", "carol", "30.00")
+        );
+
+        ResponseEntity<BatchTipResult[]> response = restTemplate.postForEntity(
+                createUrl("/api/tips/batch"),
+                requests,
+                BatchTipResult[].class
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(response.getBody()).hasSize(3);
+        assertThat(response.getBody()).noneMatch(BatchTipResult::isReplayed);
+        assertThat(response.getBody()[0].getTip().getSenderId()).isEqualTo("alice");
+        assertThat(response.getBody()[1].getTip().getSenderId()).isEqualTo("bob");
+        assertThat(response.getBody()[2].getTip().getRoomId()).isEqualTo("room2");
+        assertThat(tipRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldReplayRecordedAndRepeatedIdempotencyKeys() {
+        ResponseEntity<BatchTipResult[]> first = restTemplate.postForEntity(
+                createUrl("/api/tips/batch"),
+                List.of(batchItem("key-1", "room1", "alice", "10.00")),
+                BatchTipResult[].class
+        );
+        Long firstTipId = first.getBody()[0].getTip().getId();
+
+        List<BatchTipRequest> requests = List.of(
+                batchItem("key-1", "room1", "alice", "10.00"),
+                batchItem("key-2", "room1", "bob", "20.00"),
+                batchItem("key-2", "room1", "bob", "20.00")
+        );
+
+        ResponseEntity<BatchTipResult[]> response = restTemplate.postForEntity(
+                createUrl("/api/tips/batch"),
+                requests,
+                BatchTipResult[].class
+        );
+
+        BatchTipResult[] results = response.getBody();
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(results[0].isReplayed()).isTrue();
+        assertThat(results[0].getTip().getId()).isEqualTo(firstTipId);
+        assertThat(results[1].isReplayed()).isFalse();
+        assertThat(results[2].isReplayed()).isTrue();
+        assertThat(results[2].getTip().getId()).isEqualTo(results[1].getTip().getId());
+
+        assertThat(tipRepository.count()).isEqualTo(2);
+        assertThat(idempotencyRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldReturnOkWhenWholeBatchIsReplayed() {
+        List<BatchTipRequest> requests = List.of(batchItem("key-1", "room1", "alice", "10.00"));
+
+        restTemplate.postForEntity(createUrl("/api/tips/batch"), requests, BatchTipResult[].class);
+        ResponseEntity<BatchTipResult[]> replay = restTemplate.postForEntity(
+                createUrl("/api/tips/batch"),
+                requests,
+                BatchTipResult[].class
+        );
+
+        assertThat(replay.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(replay.getBody()[0].isReplayed()).isTrue();
+        assertThat(tipRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectBatchReusingKeyForDifferentTip() {
+        List<BatchTipRequest> requests = List.of(
+                batchItem("key-1", "room1", "alice", "10.00"),
+                batchItem("key-1", "room1", "alice", "50.00")
+        );
+
+        ResponseEntity<String> response = restTemplate.postForEntity(
+                createUrl("/api/tips/batch"),
+                requests,
+                String.class
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_CONTENT);
+        assertThat(tipRepository.count()).isZero();
+        assertThat(idempotencyRepository.count()).isZero();
+    }
+
+    @Test
+    void shouldRejectEmptyBatch() {
+        ResponseEntity<String> response = restTemplate.postForEntity(
+                createUrl("/api/tips/batch"),
+                List.of(),
+                String.class
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation") // MappingJackson2MessageConverter deprecated but no replacement yet in Spring Boot 4.0.1
+    void shouldBroadcastOneMessagePerRoom() throws Exception {
+        List<RoomTipBatch> received = new CopyOnWriteArrayList<>();
+
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+
+        MappingJackson2MessageConverter messageConverter = new MappingJackson2MessageConverter();
+        messageConverter.setObjectMapper(objectMapper);
+        stompClient.setMessageConverter(messageConverter);
+
+        StompSession session = stompClient
+                .connectAsync(String.format("ws://localhost:%d/ws", port), new StompSessionHandlerAdapter() {})
+                .get(10, TimeUnit.SECONDS);
+
+        session.subscribe("/topic/rooms/batch_room", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return RoomTipBatch.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((RoomTipBatch) payload);
+            }
+        });
+
+        // Give subscription time to be fully registered
+        Thread.sleep(2000);
+
+        List<BatchTipRequest> requests = List.of(
+                batchItem(null, "batch_room", "alice", "10.00"),
+                batchItem(null, "batch_room", "bob", "20.00"),
+                batchItem(null, "batch_room", "carol", "30.00")
+        );
+        restTemplate.postForEntity(createUrl("/api/tips/batch"), requests, BatchTipResult[].class);
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !received.isEmpty());
+        Thread.sleep(500);
+
+        assertThat(received).hasSize(1);
+        assertThat(received.getFirst().getRoomId()).isEqualTo("batch_room");
+        assertThat(received.getFirst().getTips())
+                .extracting(TipResponse::getSenderId)
+                .containsExactly("alice", "bob", "carol");
+        assertThat(received.getFirst().getTipCount()).isEqualTo(3);
+        assertThat(received.getFirst().getTotalAmount()).isEqualByComparingTo("60.00");
+
+        session.disconnect();
+    }
+
+    private BatchTipRequest batchItem(String idempotencyKey, String roomId, String senderId, String amount) {
+        return BatchTipRequest.builder()
+                .idempotencyKey(idempotencyKey)
+                .tip(CreateTipRequest.builder()
+                        .roomId(roomId)
+                        .senderId(senderId)
+                        .recipientId("streamer")
+                        .amount(new BigDecimal(amount))
+                        .build())
+                .build();
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
@@ -0,0 +1,131 @@
+package com.mchekin.tipcurrent;
+
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A fetch size of 2 makes every export span several cursor fetches.
+ */
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "tipcurrent.export.fetch-size=2"
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class TipExportIntegrationTest {
+
+    private static final Instant DAY = Instant.parse("2024-01-15T00:00:00Z");
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JsonMapper jsonMapper;
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAll();
+    }
+
+    @Test
+    void shouldStreamMatchingTipsAsNdjsonOldestFirst() {
+        for (int hour = 0; hour < 10; hour++) {
+            insertTip("room1", "sender" + hour, DAY.plus(hour, ChronoUnit.HOURS));
+        }
+        insertTip("room2", "other", DAY.plus(1, ChronoUnit.HOURS));
+
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                createUrl("/api/tips/export?roomId=room1&from=2024-01-15T02:00:00Z&to=2024-01-15T09:00:00Z"),
+                String.class
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaType.APPLICATION_NDJSON)).isTrue();
+
+        List<TipResponse> tips = response.getBody().lines()
+                .map(line -> jsonMapper.readValue(line, TipResponse.class))
+                .toList();
+        assertThat(tips).extracting(TipResponse::getSenderId)
+                .containsExactly("sender2", "sender3", "sender4", "sender5", "sender6", "sender7", "sender8");
+        assertThat(tips).allMatch(tip -> tip.getMetadata() == null);
+    }
+
+    @Test
+    void shouldExportEverythingWithoutFilters() {
+        for (int i = 0; i < 5; i++) {
+            insertTip("room" + i, "sender" + i, DAY.plus(i, ChronoUnit.MINUTES));
+        }
+
+        ResponseEntity<String> response = restTemplate.getForEntity(createUrl("/api/tips/export"), String.class);
+
+        assertThat(response.getBody().lines()).hasSize(5);
+    }
+
+    @Test
+    void shouldRejectEmptyRange() {
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                createUrl("/api/tips/export?from=2024-01-15T02:00:00Z&to=2024-01-15T02:00:00Z"),
+                String.class
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    private void insertTip(String roomId, String senderId, Instant createdAt) {
+        jdbcTemplate.update("""
+                INSERT INTO tips (room_id, sender_id, recipient_id, amount, metadata, created_at)
+                VALUES (?, ?, 'streamer', 10.00, '{"source":"test"}', ?)
+                """, roomId, senderId, Timestamp.from(createdAt));
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
@@ -2,8 +2,10 @@ package com.mchekin.tipcurrent;
 
 import com.mchekin.tipcurrent.domain.Tip;
 import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.TipPageResponse;
 import com.mchekin.tipcurrent.dto.TipResponse;
 import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.service.RecentTipsCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +15,7 @@ import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.messaging.converter.MappingJackson2MessageConverter;
@@ -30,6 +33,12 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -67,9 +76,16 @@ class TipIntegrationTest {
     @Autowired
     private TipRepository tipRepository;
 
+    @Autowired
+    private RecentTipsCache recentTipsCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @BeforeEach
     void setUp() {
         tipRepository.deleteAll();
+        recentTipsCache.clear();
     }
 
     @Test
@@ -247,6 +263,127 @@ class TipIntegrationTest {
         assertThat(tip2Position).isLessThan(tip1Position);
     }
 
+    @Test
+    void shouldPageThroughTipsWithCursor() {
+        for (int i = 0; i < 5; i++) {
+            createTestTip("room1", "sender" + i, "bob", new BigDecimal("10"));
+        }
+        createTestTip("room2", "alice", "bob", new BigDecimal("10"));
+
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            String url = "/api/tips?roomId=room1&size=2" + (cursor == null ? "" : "&cursor=" + cursor);
+            ResponseEntity<TipPageResponse> response = restTemplate.getForEntity(createUrl(url), TipPageResponse.class);
+
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(response.getBody().getTotalElements()).isNull();
+            response.getBody().getContent().forEach(tip -> ids.add(tip.getId()));
+            cursor = response.getBody().getNext();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(ids).hasSize(5).doesNotHaveDuplicates();
+        assertThat(ids).isSortedAccordingTo(Comparator.reverseOrder());
+    }
+
+    @Test
+    void shouldIncludeTotalWhenRequested() {
+        createTestTip("room1", "alice", "bob", new BigDecimal("100"));
+        createTestTip("room1", "charlie", "bob", new BigDecimal("200"));
+        createTestTip("room2", "alice", "david", new BigDecimal("50"));
+
+        ResponseEntity<TipPageResponse> exact = restTemplate.getForEntity(
+                createUrl("/api/tips?roomId=room1&size=1&count=exact"),
+                TipPageResponse.class
+        );
+        ResponseEntity<TipPageResponse> estimate = restTemplate.getForEntity(
+                createUrl("/api/tips?roomId=room1&count=estimate"),
+                TipPageResponse.class
+        );
+
+        assertThat(exact.getBody().getTotalElements()).isEqualTo(2);
+        assertThat(exact.getBody().getContent()).hasSize(1);
+        assertThat(estimate.getBody().getTotalElements()).isNotNull().isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    void shouldOnlyListMetadataWhenRequested() {
+        restTemplate.postForEntity(createUrl("/api/tips"), CreateTipRequest.builder()
+                .roomId("room1")
+                .senderId("alice")
+                .recipientId("bob")
+                .amount(new BigDecimal("100"))
+                .metadata("{\"type\":\"celebration\"}")
+                .build(), TipResponse.class);
+
+        ResponseEntity<TipPageResponse> withoutMetadata = restTemplate.getForEntity(
+                createUrl("/api/tips?roomId=room1"),
+                TipPageResponse.class
+        );
+        ResponseEntity<TipPageResponse> withMetadata = restTemplate.getForEntity(
+                createUrl("/api/tips?roomId=room1&includeMetadata=true"),
+                TipPageResponse.class
+        );
+
+        assertThat(withoutMetadata.getBody().getContent().getFirst().getMetadata()).isNull();
+        assertThat(withoutMetadata.getBody().getContent().getFirst().getSenderId()).isEqualTo("alice");
+        assertThat(withMetadata.getBody().getContent().getFirst().getMetadata()).isEqualTo("{\"type\":\"celebration\"}");
+    }
+
+    @Test
+    void shouldFilterTipsByTimeRange() {
+        Instant day = Instant.parse("2024-01-15T00:00:00Z");
+        for (int hour = 0; hour < 6; hour++) {
+            insertTip("room1", hour % 2 == 0 ? "alice" : "charlie", day.plus(hour, ChronoUnit.HOURS));
+        }
+        insertTip("room2", "alice", day.plus(2, ChronoUnit.HOURS));
+
+        ResponseEntity<TipPageResponse> inRoom = restTemplate.getForEntity(
+                createUrl("/api/tips?roomId=room1&from=2024-01-15T01:00:00Z&to=2024-01-15T04:00:00Z&count=exact"),
+                TipPageResponse.class
+        );
+        ResponseEntity<TipPageResponse> bySender = restTemplate.getForEntity(
+                createUrl("/api/tips?senderId=alice&from=2024-01-15T02:00:00Z"),
+                TipPageResponse.class
+        );
+
+        assertThat(inRoom.getBody().getContent()).extracting(TipResponse::getCreatedAt).containsExactly(
+                day.plus(3, ChronoUnit.HOURS), day.plus(2, ChronoUnit.HOURS), day.plus(1, ChronoUnit.HOURS));
+        assertThat(inRoom.getBody().getTotalElements()).isEqualTo(3);
+        assertThat(bySender.getBody().getContent()).extracting(TipResponse::getRoomId)
+                .containsExactlyInAnyOrder("room1", "room1", "room2");
+    }
+
+    @Test
+    void shouldRejectEmptyTimeRange() {
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                createUrl("/api/tips?from=2024-01-15T02:00:00Z&to=2024-01-15T01:00:00Z"),
+                String.class
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void shouldRejectMalformedCursor() {
+        ResponseEntity<String> response = restTemplate.getForEntity(
+                createUrl("/api/tips?cursor=not-a-cursor"),
+                String.class
+        );
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    private void insertTip(String roomId, String senderId, Instant createdAt) {
+        jdbcTemplate.update("""
+                INSERT INTO tips (room_id, sender_id, recipient_id, amount, created_at)
+                VALUES (?, ?, 'bob', 10.00, ?)
+                """, roomId, senderId, Timestamp.from(createdAt));
+    }
+
     private TipResponse createTestTip(String roomId, String senderId, String recipientId, BigDecimal amount) {
         CreateTipRequest request = CreateTipRequest.builder()
                 .roomId(roomId)
@@ -0,0 +1,146 @@
+package com.mchekin.tipcurrent;
+
+import com.mchekin.tipcurrent.domain.Tip;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.repository.TipRepositoryCustom.TipFilter;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares a room listing page read as managed {@link Tip} entities and copied into responses,
+ * which is how listings used to work, with the projected query that reads straight into
+ * {@link TipResponse} without metadata. Prints latency and bytes allocated per page.
+ * Run with {@code ./mvnw test -Dtest=TipListingBenchmarkTest -Dbenchmark=true}.
+ */
+@SpringBootTest(classes = TipcurrentApplication.class)
+@Testcontainers
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TipListingBenchmarkTest {
+
+    private static final int ROWS = 200_000;
+    private static final int ROOMS = 50;
+    private static final int PAGE_SIZE = 20;
+    private static final int PAGES = 5_000;
+    private static final int WARMUP_PAGES = 1_000;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @BeforeEach
+    void setUp() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        tipRepository.deleteAllInBatch();
+        // Metadata of a realistic size, so the cost of reading it shows
+        jdbcTemplate.update("""
+                INSERT INTO tips (room_id, sender_id, recipient_id, amount, message, metadata, created_at)
+                SELECT 'room' || (g % ?), 'sender' || g, 'recipient' || (g % 1000), 10.00, 'Benchmark tip',
+                       '{"payload":"' || repeat('x', 1024) || '"}', now() - g * interval '1 second'
+                FROM generate_series(1, ?) g
+                """, ROOMS, ROWS);
+        jdbcTemplate.execute("VACUUM ANALYZE tips");
+    }
+
+    @Test
+    void compareRoomListing() {
+        IntFunction<List<TipResponse>> entities = i -> readOnlyTransaction.execute(status -> entityManager
+                .createQuery("SELECT t FROM Tip t WHERE t.roomId = :roomId ORDER BY t.createdAt DESC, t.id DESC", Tip.class)
+                .setParameter("roomId", "room" + (i % ROOMS))
+                .setMaxResults(PAGE_SIZE)
+                .getResultList()
+                .stream()
+                .map(TipResponse::from)
+                .toList());
+        IntFunction<List<TipResponse>> projection = i -> tipRepository.findPage(
+                new TipFilter("room" + (i % ROOMS), null, null), null, PAGE_SIZE, false);
+
+        assertThat(projection.apply(0)).extracting(TipResponse::getId)
+                .containsExactlyElementsOf(entities.apply(0).stream().map(TipResponse::getId).toList());
+
+        run(entities, WARMUP_PAGES);
+        run(projection, WARMUP_PAGES);
+
+        Result entityResult = run(entities, PAGES);
+        Result projectionResult = run(projection, PAGES);
+
+        System.out.printf("%nRoom listing, %d pages of %d tips (%d rows, %d rooms)%n", PAGES, PAGE_SIZE, ROWS, ROOMS);
+        System.out.printf("  managed entities : %8.1f us/page %10d bytes/page%n",
+                entityResult.micros(), entityResult.bytes());
+        System.out.printf("  projection       : %8.1f us/page %10d bytes/page%n",
+                projectionResult.micros(), projectionResult.bytes());
+        System.out.printf("  speedup          : %8.1fx, %.1fx less allocation%n",
+                entityResult.micros() / projectionResult.micros(),
+                (double) entityResult.bytes() / projectionResult.bytes());
+
+        System.out.println("  projection plan:");
+        jdbcTemplate.queryForList("""
+                EXPLAIN (ANALYZE, COSTS OFF, TIMING OFF, SUMMARY OFF)
+                SELECT id, room_id, sender_id, recipient_id, amount, message, created_at FROM tips
+                WHERE room_id = 'room1' ORDER BY created_at DESC, id DESC LIMIT 21
+                """, String.class).forEach(line -> System.out.println("    " + line));
+    }
+
+    private Result run(IntFunction<List<TipResponse>> page, int pages) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+
+        long rows = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < pages; i++) {
+            rows += page.apply(i).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+        assertThat(rows).isEqualTo((long) pages * PAGE_SIZE);
+        return new Result(elapsed / 1e3 / pages, allocated / pages);
+    }
+
+    private record Result(double micros, long bytes) {
+    }
+}
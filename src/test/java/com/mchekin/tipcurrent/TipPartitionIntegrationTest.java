@@ -0,0 +1,173 @@
+package com.mchekin.tipcurrent;
+
+import com.mchekin.tipcurrent.dto.CreateTipRequest;
+import com.mchekin.tipcurrent.dto.TipResponse;
+import com.mchekin.tipcurrent.repository.TipRepository;
+import com.mchekin.tipcurrent.service.TipPartitionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.resttestclient.TestRestTemplate;
+import org.springframework.boot.resttestclient.autoconfigure.AutoConfigureTestRestTemplate;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(
+    classes = TipcurrentApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT
+)
+@AutoConfigureTestRestTemplate
+@Testcontainers
+class TipPartitionIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private TipRepository tipRepository;
+
+    @Autowired
+    private TipPartitionService partitionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+    @BeforeEach
+    void setUp() {
+        tipRepository.deleteAll();
+    }
+
+    @Test
+    void shouldCreateUpcomingDailyPartitionsOnStartup() {
+        List<String> expected = IntStream.rangeClosed(0, 7)
+                .mapToObj(i -> partitionName(today.plusDays(i)))
+                .toList();
+
+        assertThat(partitionService.listDailyPartitions()).containsAll(expected);
+        assertThat(partitionService.createUpcomingPartitions()).isZero();
+    }
+
+    @Test
+    void shouldRouteNewTipsToTodaysPartition() {
+        ResponseEntity<TipResponse> response = restTemplate.postForEntity(
+                createUrl("/api/tips"),
+                CreateTipRequest.builder()
+                        .roomId("room1")
+                        .senderId("alice")
+                        .recipientId("bob")
+                        .amount(new BigDecimal("10.00"))
+                        .build(),
+                TipResponse.class
+        );
+
+        String partition = jdbcTemplate.queryForObject(
+                "SELECT tableoid::regclass::text FROM tips WHERE id = ?", String.class, response.getBody().getId());
+
+        assertThat(partition).isEqualTo(partitionName(today));
+        assertThat(tipRepository.findById(response.getBody().getId())).isPresent();
+    }
+
+    @Test
+    void shouldDetachPartitionsBeforeCutoff() {
+        LocalDate oldDay = today.minusDays(40);
+        String oldPartition = partitionName(oldDay);
+        assertThat(partitionService.createPartition(oldDay)).isTrue();
+
+        jdbcTemplate.update("""
+                INSERT INTO tips (room_id, sender_id, recipient_id, amount, created_at)
+                VALUES ('room1', 'alice', 'bob', 5.00, ?)
+                """, Timestamp.from(oldDay.atStartOfDay(ZoneOffset.UTC).plusHours(12).toInstant()));
+        assertThat(tipRepository.count()).isEqualTo(1);
+
+        try {
+            List<String> detached = partitionService.detachPartitionsBefore(today.minusDays(30));
+
+            assertThat(detached).containsExactly(oldPartition);
+            assertThat(partitionService.listDailyPartitions()).doesNotContain(oldPartition).contains(partitionName(today));
+            assertThat(tipRepository.count()).isZero();
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + oldPartition, Long.class)).isEqualTo(1);
+        } finally {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + oldPartition);
+        }
+    }
+
+    @Test
+    void shouldMoveTipsOutOfDefaultPartitionWhenCreatingTheirDay() {
+        LocalDate futureDay = today.plusDays(60);
+        String futurePartition = partitionName(futureDay);
+
+        jdbcTemplate.update("""
+                INSERT INTO tips (room_id, sender_id, recipient_id, amount, created_at)
+                VALUES ('room1', 'alice', 'bob', 5.00, ?)
+                """, Timestamp.from(futureDay.atStartOfDay(ZoneOffset.UTC).plusHours(12).toInstant()));
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tips_default", Long.class)).isEqualTo(1);
+
+        try {
+            assertThat(partitionService.createPartition(futureDay)).isTrue();
+
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tips_default", Long.class)).isZero();
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + futurePartition, Long.class)).isEqualTo(1);
+            assertThat(tipRepository.count()).isEqualTo(1);
+        } finally {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + futurePartition);
+        }
+    }
+
+    @Test
+    void shouldPruneToSinglePartitionForTimeRange() {
+        String start = today.atStartOfDay(ZoneOffset.UTC).plusHours(10).toInstant().toString();
+        String end = today.atStartOfDay(ZoneOffset.UTC).plusHours(11).toInstant().toString();
+
+        String plan = String.join("\n", jdbcTemplate.queryForList(
+                "EXPLAIN SELECT room_id, COUNT(*) FROM tips WHERE created_at >= '" + start
+                        + "' AND created_at < '" + end + "' GROUP BY room_id",
+                String.class));
+
+        assertThat(plan).contains(partitionName(today));
+        assertThat(plan).doesNotContain(partitionName(today.plusDays(1)));
+        assertThat(plan).doesNotContain("tips_default");
+    }
+
+    private String partitionName(LocalDate day) {
+        return "tips_p" + day.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+    }
+
+    private String createUrl(String path) {
+        return "http://localhost:" + port + path;
+    }
+}
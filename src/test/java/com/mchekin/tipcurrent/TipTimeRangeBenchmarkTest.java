@@ -0,0 +1,134 @@
+package com.mchekin.tipcurrent;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures time-window queries over a large append-only table with no index on created_at, with
+ * the BRIN index and with a B-tree, and prints the latency per window size and each index's size.
+ * Uses a plain copy of the tips table, so the comparison is not blurred by partition pruning.
+ * Run with {@code ./mvnw test -Dtest=TipTimeRangeBenchmarkTest -Dbenchmark=true}.
+ */
+@SpringBootTest(classes = TipcurrentApplication.class)
+@Testcontainers
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TipTimeRangeBenchmarkTest {
+
+    private static final int ROWS = 2_000_000;
+    private static final Duration SPAN = Duration.ofDays(30);
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+    private static final int QUERIES = 50;
+
+    private static final Map<String, Duration> WINDOWS = new LinkedHashMap<>();
+
+    static {
+        WINDOWS.put("1 minute", Duration.ofMinutes(1));
+        WINDOWS.put("1 hour", Duration.ofHours(1));
+        WINDOWS.put("1 day", Duration.ofDays(1));
+    }
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17-alpine")
+            .withDatabaseName("tipcurrent_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS tips_range_bench");
+        jdbcTemplate.execute("CREATE TABLE tips_range_bench (LIKE tips INCLUDING DEFAULTS)");
+        // Appended in created_at order, as live tips are
+        jdbcTemplate.update("""
+                INSERT INTO tips_range_bench (room_id, sender_id, recipient_id, amount, message, created_at)
+                SELECT 'room' || (g % 100), 'sender' || g, 'recipient' || (g % 1000), 10.00, 'Benchmark tip',
+                       ?::timestamptz + (g * ?::bigint) * interval '1 microsecond'
+                FROM generate_series(1, ?) g
+                """, Timestamp.from(START), SPAN.toNanos() / 1000 / ROWS, ROWS);
+    }
+
+    @Test
+    void compareTimeWindowQueries() {
+        Map<String, Map<String, Double>> results = new LinkedHashMap<>();
+        Map<String, Long> indexSizes = new LinkedHashMap<>();
+
+        results.put("no index", measure());
+
+        jdbcTemplate.execute("CREATE INDEX tips_range_bench_brin ON tips_range_bench USING brin (created_at) "
+                + "WITH (pages_per_range = 32)");
+        results.put("BRIN", measure());
+        indexSizes.put("BRIN", indexSize("tips_range_bench_brin"));
+        jdbcTemplate.execute("DROP INDEX tips_range_bench_brin");
+
+        jdbcTemplate.execute("CREATE INDEX tips_range_bench_btree ON tips_range_bench (created_at)");
+        results.put("B-tree", measure());
+        indexSizes.put("B-tree", indexSize("tips_range_bench_btree"));
+
+        System.out.printf("%nTime-window aggregate over %d tips spanning %d days (avg of %d queries)%n",
+                ROWS, SPAN.toDays(), QUERIES);
+        System.out.printf("  %-10s", "");
+        WINDOWS.keySet().forEach(window -> System.out.printf("%14s", window));
+        System.out.println();
+        results.forEach((index, millisByWindow) -> {
+            System.out.printf("  %-10s", index);
+            millisByWindow.values().forEach(millis -> System.out.printf("%11.2f ms", millis));
+            System.out.println();
+        });
+        indexSizes.forEach((index, bytes) -> System.out.printf("  %s index size: %,d bytes%n", index, bytes));
+
+        assertThat(indexSizes.get("BRIN")).isLessThan(indexSizes.get("B-tree"));
+    }
+
+    private Map<String, Double> measure() {
+        jdbcTemplate.execute("VACUUM ANALYZE tips_range_bench");
+        Map<String, Double> millisByWindow = new LinkedHashMap<>();
+        Random random = new Random(42);
+
+        WINDOWS.forEach((name, window) -> {
+            long rangeMicros = (SPAN.toNanos() - window.toNanos()) / 1000;
+            long totalNanos = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                Instant from = START.plusNanos(Math.floorMod(random.nextLong(), rangeMicros) * 1000);
+                long start = System.nanoTime();
+                jdbcTemplate.queryForMap("""
+                        SELECT COUNT(*), SUM(amount) FROM tips_range_bench
+                        WHERE created_at >= ? AND created_at < ?
+                        """, Timestamp.from(from), Timestamp.from(from.plus(window)));
+                totalNanos += System.nanoTime() - start;
+            }
+            millisByWindow.put(name, totalNanos / 1e6 / QUERIES);
+        });
+        return millisByWindow;
+    }
+
+    private long indexSize(String index) {
+        return jdbcTemplate.queryForObject("SELECT pg_relation_size(?::regclass)", Long.class, index);
+    }
+}
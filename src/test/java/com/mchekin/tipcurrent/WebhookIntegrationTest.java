@@ -2,12 +2,14 @@ package com.mchekin.tipcurrent;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mchekin.tipcurrent.domain.Webhook;
+import com.mchekin.tipcurrent.domain.WebhookDelivery;
 import com.mchekin.tipcurrent.domain.WebhookDeliveryLog;
 import com.mchekin.tipcurrent.dto.CreateTipRequest;
 import com.mchekin.tipcurrent.dto.CreateWebhookRequest;
 import com.mchekin.tipcurrent.dto.TipResponse;
 import com.mchekin.tipcurrent.dto.WebhookResponse;
 import com.mchekin.tipcurrent.repository.WebhookDeliveryLogRepository;
+import com.mchekin.tipcurrent.repository.WebhookDeliveryRepository;
 import com.mchekin.tipcurrent.repository.WebhookRepository;
 import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.AfterEach;
@@ -75,6 +77,9 @@ class WebhookIntegrationTest {
     @Autowired
     private WebhookDeliveryLogRepository deliveryLogRepository;
 
+    @Autowired
+    private WebhookDeliveryRepository deliveryRepository;
+
     private final ObjectMapper objectMapper = new ObjectMapper()
             .registerModule(new com.fasterxml.jackson.datatype.jsr310.JavaTimeModule());
 
@@ -86,6 +91,7 @@ class WebhookIntegrationTest {
     @BeforeEach
     void setUp() throws IOException {
         webhookRepository.deleteAll();
+        deliveryRepository.deleteAll();
         deliveryLogRepository.deleteAll();
         receivedWebhooks.clear();
         webhookLatch = new CountDownLatch(1);
@@ -283,6 +289,30 @@ class WebhookIntegrationTest {
         assertThat(webhook.signature()).isEqualTo(expectedSignature);
     }
 
+    @Test
+    void shouldDeliverTheSameBytesAsTheHttpResponse() throws Exception {
+        createAndSaveWebhook("room1", "http://localhost:" + mockServerPort + "/webhook", "tip.created", "secret", "Test");
+
+        CreateTipRequest tipRequest = new CreateTipRequest(
+                "room1",
+                "alice",
+                "bob",
+                new BigDecimal("12.50"),
+                "Encoded once",
+                "{\"source\":\"test\"}"
+        );
+
+        ResponseEntity<String> tipResponse = restTemplate.postForEntity(
+                createUrl("/api/tips"),
+                tipRequest,
+                String.class
+        );
+
+        assertThat(tipResponse.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(webhookLatch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(receivedWebhooks.getFirst().body()).isEqualTo(tipResponse.getBody());
+    }
+
     @Test
     void shouldNotDeliverWebhookWhenDisabled() throws Exception {
         Webhook webhook = createAndSaveWebhook(
@@ -392,6 +422,31 @@ class WebhookIntegrationTest {
                 });
     }
 
+    @Test
+    void shouldDeliverQueuedDeliveryLeftBehind() throws Exception {
+        Webhook webhook = createAndSaveWebhook(
+                "room1",
+                "http://localhost:" + mockServerPort + "/webhook",
+                "tip.created",
+                "secret",
+                "Test"
+        );
+        // Queued by a relay whose node went down before delivering it
+        deliveryRepository.save(WebhookDelivery.builder()
+                .webhookId(webhook.getId())
+                .event("tip.created")
+                .payload("{\"roomId\":\"room1\"}")
+                .build());
+
+        assertThat(webhookLatch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(receivedWebhooks.getFirst().body()).isEqualTo("{\"roomId\":\"room1\"}");
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            assertThat(deliveryRepository.findAll()).isEmpty();
+            assertThat(deliveryLogRepository.findAll()).hasSize(1);
+        });
+    }
+
     @Test
     void shouldGetWebhookDeliveryLogs() throws Exception {
         Webhook webhook = createAndSaveWebhook(